@@ -0,0 +1,48 @@
+package org.sergey_white.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sergey_white.entity.AnalysisResult;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полный analyze: чтение файла, разбор, минимальное время полёта и статистика цен.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AnalyzeBenchmark {
+    @Param({"1000", "1000000", "100000000"})
+    long tickets;
+
+    @Param({"STREAMING", "PARALLEL"})
+    IngestionMode mode;
+
+    private String fileName;
+    private FlyAnalyzer analyzer;
+
+    @Setup
+    public void setUp() throws IOException {
+        fileName = BenchmarkData.ticketFile(tickets).toString();
+        analyzer = new FlyAnalyzer(mode);
+    }
+
+    @Benchmark
+    public AnalysisResult analyze() throws IOException {
+        return analyzer.analyze(fileName, BenchmarkData.ORIGIN, BenchmarkData.DESTINATION);
+    }
+}
@@ -0,0 +1,44 @@
+package org.sergey_white.service;
+
+import org.sergey_white.generator.GeneratorSettings;
+import org.sergey_white.generator.TicketGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Синтетические файлы для бенчмарков. Файл генерируется один раз и переиспользуется между запусками;
+ * каталог задаётся свойством bench.dir (по умолчанию target/bench-data). Файл на 100M билетов занимает около 27 ГБ.
+ */
+final class BenchmarkData {
+    static final String ORIGIN = "Владивосток";
+    static final String DESTINATION = "Тель-Авив";
+    static final long SEED = 20240601L;
+
+    private BenchmarkData() {
+    }
+
+    static GeneratorSettings settings(long tickets) {
+        return GeneratorSettings.builder()
+                .ticketCount(tickets)
+                .seed(SEED)
+                .routeCount(100)
+                .carrierCount(10)
+                .malformedRate(0.01)
+                .build();
+    }
+
+    static synchronized Path ticketFile(long tickets) throws IOException {
+        Path directory = Path.of(System.getProperty("bench.dir", "target/bench-data"));
+        Files.createDirectories(directory);
+        Path file = directory.resolve("tickets-" + tickets + ".json");
+        if (!Files.exists(file)) {
+            Path temp = directory.resolve(file.getFileName() + ".tmp");
+            new TicketGenerator(settings(tickets)).write(temp);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,28 @@
+package org.sergey_white.service;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Запуск бенчмарков с обычными параметрами командной строки JMH (-l, -p, -wi и т.д.).
+ * Если профилировщики не заданы, подключается gc, чтобы рядом с пропускной способностью был виден темп аллокаций.
+ * <p>
+ * Пример быстрого прогона без 100M: {@code java -jar target/benchmarks.jar -p tickets=1000,1000000}
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains("-prof")) {
+            arguments.add("-prof");
+            arguments.add("gc");
+        }
+        Main.main(arguments.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,53 @@
+package org.sergey_white.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Чтение билетов маршрута из файла (readTicketsFromFile) во всех режимах,
+ * в том числе сравнение потокового чтения с отображением файла в память.
+ * Результат только подсчитывается, чтобы мерить чтение и разбор без агрегации.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class IngestionBenchmark {
+    @Param({"1000", "1000000", "100000000"})
+    long tickets;
+
+    @Param({"STREAMING", "MEMORY_MAPPED", "PARALLEL", "INDEXED"})
+    IngestionMode mode;
+
+    private String fileName;
+    private FlyAnalyzer analyzer;
+
+    @Setup
+    public void setUp() throws IOException {
+        fileName = BenchmarkData.ticketFile(tickets).toString();
+        analyzer = new FlyAnalyzer(mode);
+        // Индекс маршрутов строится при первом чтении и в замер не попадает
+        analyzer.readTicketsFromFile(fileName, BenchmarkData.ORIGIN, BenchmarkData.DESTINATION, Collectors.counting());
+    }
+
+    @Benchmark
+    public long readTickets() throws IOException {
+        return analyzer.readTicketsFromFile(fileName, BenchmarkData.ORIGIN, BenchmarkData.DESTINATION,
+                Collectors.counting());
+    }
+}
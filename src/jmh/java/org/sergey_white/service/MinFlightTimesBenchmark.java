@@ -0,0 +1,75 @@
+package org.sergey_white.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Минимальное время полёта по перевозчикам (бывший calculateMinFlightTimes):
+ * MinFlightTimeAccumulator по идентификаторам против карты со строковыми ключами.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MinFlightTimesBenchmark {
+    private static final int CARRIERS = 10;
+
+    @Param({"1000", "1000000"})
+    int tickets;
+
+    private final SymbolDictionary dictionary = new SymbolDictionary();
+    private int[] carrierIds;
+    private String[] carrierNames;
+    private long[] departures;
+    private long[] arrivals;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(BenchmarkData.SEED);
+        carrierIds = new int[tickets];
+        carrierNames = new String[tickets];
+        departures = new long[tickets];
+        arrivals = new long[tickets];
+        for (int i = 0; i < tickets; i++) {
+            String carrier = "K" + random.nextInt(CARRIERS);
+            carrierNames[i] = carrier;
+            carrierIds[i] = dictionary.carrierIdOf(carrier);
+            departures[i] = 25_000_000L + random.nextInt(60 * 24 * 60);
+            arrivals[i] = departures[i] + 60 + random.nextInt(900);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Long> accumulator() {
+        MinFlightTimeAccumulator accumulator = new MinFlightTimeAccumulator(dictionary.carrierCount());
+        for (int i = 0; i < tickets; i++) {
+            accumulator.accept(carrierIds[i], departures[i], arrivals[i]);
+        }
+        return accumulator.toMap(dictionary);
+    }
+
+    @Benchmark
+    public Map<String, Long> stringKeyedMap() {
+        Map<String, Long> minFlightTimes = new HashMap<>();
+        for (int i = 0; i < tickets; i++) {
+            minFlightTimes.merge(carrierNames[i], arrivals[i] - departures[i], Math::min);
+        }
+        return minFlightTimes;
+    }
+}
@@ -0,0 +1,72 @@
+package org.sergey_white.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор даты и времени билета (parseDateTime): EpochMinuteDecoder против прежнего разбора через DateTimeFormatter.
+ * Строки держатся в памяти, поэтому наборы ограничены 1M; 100M проверяется в IngestionBenchmark и AnalyzeBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseDateTimeBenchmark {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yy");
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("[H:mm][HH:mm]");
+
+    @Param({"1000", "1000000"})
+    int tickets;
+
+    private String[] dates;
+    private String[] times;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(BenchmarkData.SEED);
+        dates = new String[tickets];
+        times = new String[tickets];
+        for (int i = 0; i < tickets; i++) {
+            dates[i] = String.format("%02d.%02d.%02d", 1 + random.nextInt(28), 1 + random.nextInt(12), 18 + random.nextInt(7));
+            times[i] = random.nextInt(24) + ":" + String.format("%02d", random.nextInt(60));
+        }
+    }
+
+    @Benchmark
+    public long epochMinuteDecoder() {
+        long sum = 0;
+        for (int i = 0; i < tickets; i++) {
+            sum += EpochMinuteDecoder.decode(dates[i], times[i], "отправления");
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long dateTimeFormatter() {
+        long sum = 0;
+        for (int i = 0; i < tickets; i++) {
+            sum += LocalDate.parse(dates[i], DATE_FORMATTER)
+                    .atTime(LocalTime.parse(times[i], TIME_FORMATTER))
+                    .toEpochSecond(ZoneOffset.UTC);
+        }
+        return sum;
+    }
+}
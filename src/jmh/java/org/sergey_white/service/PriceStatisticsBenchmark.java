@@ -0,0 +1,80 @@
+package org.sergey_white.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Извлечение цен и медиана (бывшие extractPrices и calculateMedian): копейки в long[] с introselect
+ * против списка BigDecimal с полной сортировкой. Средняя цена считается в обоих вариантах.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PriceStatisticsBenchmark {
+    @Param({"1000", "1000000"})
+    int tickets;
+
+    private String[] priceTexts;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(BenchmarkData.SEED);
+        priceTexts = new String[tickets];
+        for (int i = 0; i < tickets; i++) {
+            long rubles = 3000 + random.nextInt(50_000);
+            priceTexts[i] = Long.toString(rubles);
+        }
+    }
+
+    @Benchmark
+    public long fixedPointSelect() {
+        long[] prices = new long[tickets];
+        long sum = 0;
+        for (int i = 0; i < tickets; i++) {
+            prices[i] = FixedPointPrices.parseKopecks(priceTexts[i]);
+            sum += prices[i];
+        }
+        long lower = OrderStatistics.select(prices, tickets, (tickets - 1) / 2);
+        long median = tickets % 2 == 1
+                ? lower
+                : FixedPointPrices.midpointRubles(lower, OrderStatistics.select(prices, tickets, tickets / 2));
+        return FixedPointPrices.averageRubles(sum, tickets) - median;
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimalSort() {
+        List<BigDecimal> prices = new ArrayList<>(tickets);
+        BigDecimal sum = BigDecimal.ZERO;
+        for (int i = 0; i < tickets; i++) {
+            BigDecimal price = new BigDecimal(priceTexts[i]);
+            prices.add(price);
+            sum = sum.add(price);
+        }
+        Collections.sort(prices);
+        int middle = tickets / 2;
+        BigDecimal median = tickets % 2 == 1
+                ? prices.get(middle)
+                : prices.get(middle - 1).add(prices.get(middle)).divide(BigDecimal.valueOf(2), 0, RoundingMode.HALF_UP);
+        return sum.divide(BigDecimal.valueOf(tickets), 0, RoundingMode.HALF_UP).subtract(median);
+    }
+}
@@ -0,0 +1,101 @@
+package org.sergey_white.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка маршрута билета: isSearchFly по разобранному дереву и RouteFilter по сырым байтам того же объекта.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteMatchBenchmark {
+    private static final String[] CITIES = {BenchmarkData.ORIGIN, BenchmarkData.DESTINATION, "Уфа", "Ларнака", "Москва"};
+
+    @Param({"1000", "1000000"})
+    int tickets;
+
+    private JsonNode[] nodes;
+    private Path file;
+    private MappedTicketFile mappedFile;
+    private long[] starts;
+    private long[] ends;
+    private final RouteFilter filter = new RouteFilter(BenchmarkData.ORIGIN, BenchmarkData.DESTINATION);
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        SplittableRandom random = new SplittableRandom(BenchmarkData.SEED);
+        nodes = new JsonNode[tickets];
+        starts = new long[tickets];
+        ends = new long[tickets];
+        file = Files.createTempFile("route-match", ".json");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            long position = 0;
+            for (int i = 0; i < tickets; i++) {
+                String json = "{\"origin\": \"VVO\", \"origin_name\": \"" + CITIES[random.nextInt(2)]
+                        + "\", \"destination\": \"TLV\", \"destination_name\": \"" + CITIES[1 + random.nextInt(4)]
+                        + "\", \"departure_date\": \"12.05.18\", \"departure_time\": \"16:20\", \"carrier\": \"TK\", "
+                        + "\"stops\": 3, \"price\": 12400}\n";
+                byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+                out.write(bytes);
+                nodes[i] = mapper.readTree(bytes);
+                starts[i] = position;
+                ends[i] = position + bytes.length - 2;
+                position += bytes.length;
+            }
+        }
+        mappedFile = new MappedTicketFile(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int isSearchFly() {
+        int matches = 0;
+        for (JsonNode node : nodes) {
+            if (FlyAnalyzer.isSearchFly(BenchmarkData.ORIGIN, BenchmarkData.DESTINATION, node)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int routeFilter() {
+        int matches = 0;
+        for (int i = 0; i < tickets; i++) {
+            if (filter.matches(mappedFile, starts[i], ends[i])) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
@@ -1,12 +1,135 @@
 package org.sergey_white;
 
 
+import org.sergey_white.entity.AnalysisResult;
+import org.sergey_white.generator.GeneratorSettings;
+import org.sergey_white.generator.TicketGenerator;
+import org.sergey_white.report.ReportFormat;
+import org.sergey_white.server.TicketQueryServer;
+import org.sergey_white.service.DatasetHolder;
 import org.sergey_white.service.FlyAnalyzer;
+import org.sergey_white.service.IngestionMode;
+import org.sergey_white.service.Phase;
+import org.sergey_white.service.PhaseMetrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Collectors;
 
 
 public class Main {
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("serve")) {
+            serve(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("generate")) {
+            generate(args);
+            return;
+        }
+        ReportFormat format = args.length > 0 ? reportFormat(args[0]) : ReportFormat.TEXT;
+        if (format == null) {
+            System.err.println("Использование: [" + Arrays.stream(ReportFormat.values())
+                    .map(value -> value.name().toLowerCase()).collect(Collectors.joining("|")) + "]"
+                    + " | serve [порт] [файл] | generate файл количество [...]");
+            return;
+        }
         FlyAnalyzer analyzer = new FlyAnalyzer();
-        analyzer.analyze("tickets.json","Владивосток","Тель-Авив");
+        // -Dfly.metrics.split=true: ещё и доли чтения (разбор, преобразование, агрегация) ценой отметки времени на билет
+        analyzer.getMetrics().setSplitRead(Boolean.getBoolean("fly.metrics.split"));
+        try {
+            Writer out = consoleWriter();
+            AnalysisResult result = analyzer.analyze("tickets.json","Владивосток","Тель-Авив");
+            PhaseMetrics.Measurement render = analyzer.getMetrics().start();
+            format.renderer().render(result, out);
+            out.flush();
+            analyzer.getMetrics().stop(Phase.RENDER, render);
+            System.err.print(analyzer.getErrors().summary());
+            // -Dfly.metrics=true: время и аллокации по этапам
+            if (Boolean.getBoolean("fly.metrics")) {
+                System.err.print(analyzer.getMetrics().summary());
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка при обработке файла: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // serve [порт] [файл]
+    private static void serve(String[] args) {
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        String fileName = args.length > 2 ? args[2] : "tickets.json";
+        // Последовательное чтение потоком: фоновая перезагрузка занимает одно ядро и не мешает запросам,
+        // а файл, переписанный во время чтения, не отображён в память
+        FlyAnalyzer analyzer = new FlyAnalyzer(IngestionMode.STREAMING);
+        try {
+            DatasetHolder dataset = new DatasetHolder(analyzer, Path.of(fileName));
+            dataset.startWatching();
+            TicketQueryServer server = new TicketQueryServer(dataset, port);
+            server.start();
+            System.out.println("Загружено маршрутов: " + dataset.current().getRoutes().size()
+                    + ", сервер слушает порт " + server.getAddress().getPort());
+            System.err.print(analyzer.getErrors().summary());
+        } catch (IOException e) {
+            System.err.println("Ошибка при запуске сервера: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // generate файл количество [зерно [маршрутов [перевозчиков [доля_ошибок [перекос [доля_ночных]]]]]]
+    private static void generate(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Использование: generate файл количество "
+                    + "[зерно [маршрутов [перевозчиков [доля_ошибок [перекос [доля_ночных]]]]]]");
+            return;
+        }
+        GeneratorSettings.GeneratorSettingsBuilder settings = GeneratorSettings.builder()
+                .ticketCount(Long.parseLong(args[2]));
+        if (args.length > 3) {
+            settings.seed(Long.parseLong(args[3]));
+        }
+        if (args.length > 4) {
+            settings.routeCount(Integer.parseInt(args[4]));
+        }
+        if (args.length > 5) {
+            settings.carrierCount(Integer.parseInt(args[5]));
+        }
+        if (args.length > 6) {
+            settings.malformedRate(Double.parseDouble(args[6]));
+        }
+        // Показатель Ципфа для маршрутов и перевозчиков; 0 - равномерно
+        if (args.length > 7) {
+            settings.skew(Double.parseDouble(args[7]));
+        }
+        if (args.length > 8) {
+            settings.overnightRate(Double.parseDouble(args[8]));
+        }
+        try {
+            new TicketGenerator(settings.build()).write(Path.of(args[1]));
+        } catch (IOException e) {
+            System.err.println("Ошибка при генерации файла: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // null, если такого формата нет
+    private static ReportFormat reportFormat(String name) {
+        try {
+            return ReportFormat.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Кодировка та же, что у System.out
+    private static Writer consoleWriter() {
+        String encoding = System.getProperty("sun.stdout.encoding");
+        Charset charset = encoding != null ? Charset.forName(encoding) : Charset.defaultCharset();
+        return new BufferedWriter(new OutputStreamWriter(System.out, charset));
     }
 }
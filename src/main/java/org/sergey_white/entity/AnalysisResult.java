@@ -0,0 +1,14 @@
+package org.sergey_white.entity;
+
+import lombok.Value;
+
+import java.util.Map;
+
+@Value
+public class AnalysisResult {
+    RouteStatistics statistics;
+    /**
+     * Приблизительные перцентили цены в копейках по номеру перцентиля; пусто, если скетч цен не строился.
+     */
+    Map<Integer, Long> approximatePricePercentiles;
+}
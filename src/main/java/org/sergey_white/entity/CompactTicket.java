@@ -0,0 +1,23 @@
+package org.sergey_white.entity;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+@Value
+public class CompactTicket {
+    int carrierId;
+    int originId;
+    int originNameId;
+    int destinationId;
+    int destinationNameId;
+    long departureEpochMinute;
+    long arrivalEpochMinute;
+    long priceKopecks;
+    byte stops;
+    /**
+     * Точная цена в рублях, если она не выражается целым числом копеек (например, "100.005"); иначе null.
+     * priceKopecks в этом случае округлена HALF_UP.
+     */
+    BigDecimal exactPrice;
+}
@@ -0,0 +1,12 @@
+package org.sergey_white.entity;
+
+import lombok.Value;
+import org.sergey_white.service.ErrorKind;
+
+@Value
+public class RejectedTicket {
+    ErrorKind kind;
+    String carrier;
+    String message;
+    String json;
+}
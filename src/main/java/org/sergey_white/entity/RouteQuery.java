@@ -0,0 +1,9 @@
+package org.sergey_white.entity;
+
+import lombok.Value;
+
+@Value
+public class RouteQuery {
+    String originName;
+    String destinationName;
+}
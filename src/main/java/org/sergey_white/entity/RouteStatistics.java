@@ -0,0 +1,35 @@
+package org.sergey_white.entity;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
+
+@Value
+public class RouteStatistics {
+    String originName;
+    String destinationName;
+    int ticketCount;
+    Map<String, Long> minFlightTimes;
+    long averagePriceKopecks;
+    long medianPriceKopecks;
+    long priceDifferenceKopecks;
+    /**
+     * Точные медиана и разница в рублях, если они не выражаются целым числом копеек
+     * (в данных есть цены с долями копейки); иначе null, и значения берутся из полей в копейках.
+     */
+    BigDecimal exactMedianPrice;
+    BigDecimal exactPriceDifference;
+    /**
+     * Медиана и разница взяты из скетча цен, а не выбраны по всем ценам маршрута.
+     */
+    boolean medianApproximate;
+
+    /**
+     * Маршрут без билетов в файле.
+     */
+    public static RouteStatistics empty(String originName, String destinationName) {
+        return new RouteStatistics(originName, destinationName, 0, Collections.emptyMap(), 0, 0, 0, null, null, false);
+    }
+}
@@ -3,8 +3,11 @@ package org.sergey_white.entity;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import java.math.BigDecimal;
-import java.time.LocalDateTime;
 
+/**
+ * Описание одного элемента массива tickets в исходном JSON: только поля файла, без вычисляемых.
+ * Сам разбор идёт в {@link CompactTicket}.
+ */
 @Data
 public class Ticket {
     @JsonProperty("origin")
@@ -29,7 +32,4 @@ public class Ticket {
     private int stops;
     @JsonProperty("price")
     private BigDecimal price;
-
-    private LocalDateTime departureDateTime;
-    private LocalDateTime arrivalDateTime;
 }
\ No newline at end of file
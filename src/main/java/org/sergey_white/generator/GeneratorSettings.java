@@ -0,0 +1,39 @@
+package org.sergey_white.generator;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDate;
+
+@Value
+@Builder
+public class GeneratorSettings {
+    long ticketCount;
+    @Builder.Default
+    long seed = 42;
+    @Builder.Default
+    int routeCount = 100;
+    @Builder.Default
+    int carrierCount = 10;
+    /**
+     * Показатель распределения Ципфа для выбора маршрута и перевозчика; 0 - равномерно.
+     */
+    @Builder.Default
+    double skew = 1.0;
+    /**
+     * Доля ночных рейсов: вылет вечером, прилёт на следующий день.
+     */
+    @Builder.Default
+    double overnightRate = 0.1;
+    /**
+     * Доля записей с ошибкой: неверная дата, время, формат цены или отрицательная цена поровну.
+     */
+    @Builder.Default
+    double malformedRate = 0.0;
+    @Builder.Default
+    LocalDate firstDate = LocalDate.of(2018, 5, 1);
+    @Builder.Default
+    int dayCount = 60;
+    @Builder.Default
+    int threads = Runtime.getRuntime().availableProcessors();
+}
@@ -0,0 +1,240 @@
+package org.sergey_white.generator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Генератор файлов с билетами в формате tickets.json для нагрузочных проверок.
+ * <p>
+ * Билеты делятся на блоки по {@link #BLOCK_SIZE}; каждый блок строится в своём потоке со своим генератором
+ * случайных чисел, зерно которого зависит только от общего зерна и номера блока. Поэтому файл
+ * побайтно воспроизводится при любом числе потоков. Блок собирается сразу в байтах UTF-8, и блоки пишутся в файл
+ * по порядку; в работе одновременно не больше {@link #MAX_BLOCKS_IN_FLIGHT} блоков (около 18 МБ каждый),
+ * так что память не зависит ни от числа билетов, ни от числа ядер.
+ * <p>
+ * Маршрут и перевозчик выбираются по закону Ципфа, самый частый маршрут - Владивосток - Тель-Авив.
+ * Коды придуманных городов и перевозчиков (C12, K7) не совпадают с настоящими из начала списков.
+ * У каждого маршрута своя базовая длительность и цена, у перевозчика - поправка к длительности.
+ */
+public class TicketGenerator {
+    public static final int BLOCK_SIZE = 1 << 16;
+    public static final int MAX_BLOCKS_IN_FLIGHT = 8;
+    // Средняя длина записи в UTF-8 вместе с разделителем; по ней выделяется буфер блока
+    private static final int AVERAGE_RECORD_BYTES = 280;
+
+    private static final String[][] KNOWN_CITIES = {
+            {"VVO", "Владивосток"}, {"TLV", "Тель-Авив"}, {"UFA", "Уфа"}, {"LRN", "Ларнака"},
+            {"SVO", "Москва"}, {"LED", "Санкт-Петербург"}, {"KZN", "Казань"}, {"OVB", "Новосибирск"},
+            {"IST", "Стамбул"}, {"LHR", "Лондон"}, {"CDG", "Париж"}, {"BER", "Берлин"}
+    };
+    private static final String[] KNOWN_CARRIERS = {"SU", "S7", "TK", "BA"};
+    private static final long MINUTES_PER_DAY = 24 * 60;
+    private static final int MALFORMED_KINDS = 4;
+
+    private final GeneratorSettings settings;
+    private final ZipfSampler routeSampler;
+    private final ZipfSampler carrierSampler;
+    private final String[] cityCodes;
+    private final String[] cityNames;
+    private final int cityCount;
+    private final String[] carriers;
+    private final long firstEpochDay;
+
+    public TicketGenerator(GeneratorSettings settings) {
+        if (settings.getRouteCount() < 1 || settings.getCarrierCount() < 1 || settings.getDayCount() < 1) {
+            throw new IllegalArgumentException("Число маршрутов, перевозчиков и дней должно быть положительным");
+        }
+        this.settings = settings;
+        this.routeSampler = new ZipfSampler(settings.getRouteCount(), settings.getSkew());
+        this.carrierSampler = new ZipfSampler(settings.getCarrierCount(), settings.getSkew());
+        // Городов столько, чтобы пар (отправление, прибытие) хватило на все маршруты
+        int cities = 2;
+        while ((long) cities * (cities - 1) < settings.getRouteCount()) {
+            cities++;
+        }
+        this.cityCount = cities;
+        this.cityCodes = new String[cities];
+        this.cityNames = new String[cities];
+        for (int i = 0; i < cities; i++) {
+            cityCodes[i] = i < KNOWN_CITIES.length ? KNOWN_CITIES[i][0] : "C" + i;
+            cityNames[i] = i < KNOWN_CITIES.length ? KNOWN_CITIES[i][1] : "Город " + (i + 1);
+        }
+        this.carriers = new String[settings.getCarrierCount()];
+        for (int i = 0; i < carriers.length; i++) {
+            carriers[i] = i < KNOWN_CARRIERS.length ? KNOWN_CARRIERS[i] : "K" + i;
+        }
+        this.firstEpochDay = settings.getFirstDate().toEpochDay();
+    }
+
+    public void write(Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 20)) {
+            write(out);
+        }
+    }
+
+    public void write(OutputStream out) throws IOException {
+        out.write("{\n  \"tickets\": [".getBytes(StandardCharsets.UTF_8));
+        long blocks = (settings.getTicketCount() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        // Больше потоков, чем блоков в работе, не нужно: остальные ждали бы записи
+        int threads = Math.max(1, Math.min(settings.getThreads(), MAX_BLOCKS_IN_FLIGHT));
+        int maxInFlight = Math.min(threads * 2, MAX_BLOCKS_IN_FLIGHT);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Deque<Future<BlockBuffer>> inFlight = new ArrayDeque<>();
+            long nextBlock = 0;
+            while (nextBlock < blocks || !inFlight.isEmpty()) {
+                while (nextBlock < blocks && inFlight.size() < maxInFlight) {
+                    long block = nextBlock++;
+                    inFlight.add(executor.submit(() -> generateBlock(block)));
+                }
+                inFlight.poll().get().writeTo(out);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Генерация прервана", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Ошибка генерации билетов", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        out.write("\n  ]\n}\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private BlockBuffer generateBlock(long block) {
+        SplittableRandom random = new SplittableRandom(mix(settings.getSeed() ^ mix(block + 1)));
+        long first = block * BLOCK_SIZE;
+        long last = Math.min(first + BLOCK_SIZE, settings.getTicketCount());
+        BlockBuffer buffer = new BlockBuffer((int) (last - first) * AVERAGE_RECORD_BYTES);
+        // Кириллица в StringBuilder хранится по два байта на символ, поэтому в строке держим только одну запись
+        StringBuilder json = new StringBuilder(512);
+        for (long index = first; index < last; index++) {
+            json.setLength(0);
+            json.append(index == 0 ? "\n" : ",\n");
+            appendTicket(json, random);
+            buffer.append(json.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return buffer;
+    }
+
+    private void appendTicket(StringBuilder json, SplittableRandom random) {
+        int route = routeSampler.sample(random);
+        int origin = route / (cityCount - 1);
+        int destination = route % (cityCount - 1);
+        if (destination >= origin) {
+            destination++;
+        }
+        int carrier = carrierSampler.sample(random);
+
+        long routeHash = mix(route + 0x5DEECE66DL);
+        long duration = 60 + Math.floorMod(routeHash, 720) + Math.floorMod(mix(carrier + 1L), 60)
+                + random.nextInt(30);
+        long departureDay = firstEpochDay + random.nextInt(settings.getDayCount());
+        long departureMinute;
+        if (random.nextDouble() < settings.getOvernightRate()) {
+            // Ночной рейс: вылет с 20:00 и прилёт не раньше полуночи следующего дня
+            departureMinute = 20 * 60 + random.nextInt(4 * 60);
+            duration = Math.max(duration, MINUTES_PER_DAY - departureMinute + random.nextInt(4 * 60) + 1);
+        } else {
+            departureMinute = random.nextLong(MINUTES_PER_DAY - duration > 0 ? MINUTES_PER_DAY - duration : 1);
+        }
+        long departure = departureDay * MINUTES_PER_DAY + departureMinute;
+        long arrival = departure + duration;
+
+        long basePrice = 3000 + Math.floorMod(routeHash >>> 20, 47000);
+        long price = Math.round(basePrice * (0.7 + random.nextDouble() * 0.8));
+
+        String departureDate = date(departure);
+        String departureTime = time(departure);
+        String arrivalTime = time(arrival);
+        String priceText = Long.toString(price);
+        if (random.nextDouble() < settings.getMalformedRate()) {
+            switch (random.nextInt(MALFORMED_KINDS)) {
+                case 0:
+                    departureDate = "99.99.99";
+                    break;
+                case 1:
+                    arrivalTime = "25:61";
+                    break;
+                case 2:
+                    priceText = "\"" + price + "a\"";
+                    break;
+                default:
+                    priceText = Long.toString(-price);
+                    break;
+            }
+        }
+
+        json.append("    {\"origin\": \"").append(cityCodes[origin])
+                .append("\", \"origin_name\": \"").append(cityNames[origin])
+                .append("\", \"destination\": \"").append(cityCodes[destination])
+                .append("\", \"destination_name\": \"").append(cityNames[destination])
+                .append("\", \"departure_date\": \"").append(departureDate)
+                .append("\", \"departure_time\": \"").append(departureTime)
+                .append("\", \"arrival_date\": \"").append(date(arrival))
+                .append("\", \"arrival_time\": \"").append(arrivalTime)
+                .append("\", \"carrier\": \"").append(carriers[carrier])
+                .append("\", \"stops\": ").append(random.nextInt(4))
+                .append(", \"price\": ").append(priceText)
+                .append('}');
+    }
+
+    // dd.MM.yy
+    private static String date(long epochMinute) {
+        long epochDay = Math.floorDiv(epochMinute, MINUTES_PER_DAY);
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        return twoDigits(date.getDayOfMonth()) + "." + twoDigits(date.getMonthValue()) + "."
+                + twoDigits(date.getYear() % 100);
+    }
+
+    // H:mm
+    private static String time(long epochMinute) {
+        long minuteOfDay = Math.floorMod(epochMinute, MINUTES_PER_DAY);
+        return minuteOfDay / 60 + ":" + twoDigits((int) (minuteOfDay % 60));
+    }
+
+    private static String twoDigits(int value) {
+        return value < 10 ? "0" + value : Integer.toString(value);
+    }
+
+    // Байты блока в UTF-8; массив растёт, только если записи длиннее средней
+    private static final class BlockBuffer {
+        private byte[] bytes;
+        private int size;
+
+        private BlockBuffer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        private void append(byte[] record) {
+            if (size + record.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + record.length, bytes.length + bytes.length / 4));
+            }
+            System.arraycopy(record, 0, bytes, size, record.length);
+            size += record.length;
+        }
+
+        private void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, size);
+        }
+    }
+
+    // Финальное перемешивание SplitMix64
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,73 @@
+package org.sergey_white.report;
+
+import org.sergey_white.entity.AnalysisResult;
+import org.sergey_white.entity.RouteStatistics;
+import org.sergey_white.service.FixedPointPrices;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Отчёт в CSV: строка на пару маршрут-перевозчик, ценовые показатели маршрута повторяются в каждой строке.
+ * Маршрут без билетов даёт одну строку с пустым перевозчиком. Цены в рублях, время полёта в минутах.
+ * Колонка median_approximate - true, если медиана и разница взяты из скетча цен.
+ */
+public class CsvReportRenderer implements ReportRenderer {
+    private static final String NEW_LINE = "\r\n";
+    private static final String HEADER = "origin_name,destination_name,ticket_count,carrier,min_flight_minutes,"
+            + "average_price,median_price,price_difference,approx_p50,approx_p90,approx_p99,median_approximate";
+    private static final int[] PERCENTILES = {50, 90, 99};
+
+    @Override
+    public void render(Collection<AnalysisResult> results, Writer out) throws IOException {
+        out.write(HEADER);
+        out.write(NEW_LINE);
+        for (AnalysisResult result : results) {
+            RouteStatistics statistics = result.getStatistics();
+            String route = field(statistics.getOriginName()) + ',' + field(statistics.getDestinationName())
+                    + ',' + statistics.getTicketCount() + ',';
+            if (statistics.getTicketCount() == 0) {
+                out.write(route + ",,,,,,,,");
+                out.write(NEW_LINE);
+                continue;
+            }
+            String prices = priceColumns(result);
+            for (Map.Entry<String, Long> entry : statistics.getMinFlightTimes().entrySet()) {
+                out.write(route);
+                out.write(field(entry.getKey()));
+                out.write(',');
+                out.write(Long.toString(entry.getValue()));
+                out.write(prices);
+                out.write(NEW_LINE);
+            }
+        }
+    }
+
+    private static String priceColumns(AnalysisResult result) {
+        RouteStatistics statistics = result.getStatistics();
+        StringBuilder columns = new StringBuilder()
+                .append(',').append(FixedPointPrices.format(statistics.getAveragePriceKopecks()))
+                .append(',').append(FixedPointPrices.format(statistics.getMedianPriceKopecks(),
+                        statistics.getExactMedianPrice()))
+                .append(',').append(FixedPointPrices.format(statistics.getPriceDifferenceKopecks(),
+                        statistics.getExactPriceDifference()));
+        for (int percentile : PERCENTILES) {
+            Long value = result.getApproximatePricePercentiles().get(percentile);
+            columns.append(',').append(value == null ? "" : FixedPointPrices.format(value));
+        }
+        return columns.append(',').append(statistics.isMedianApproximate()).toString();
+    }
+
+    // Экранирование по RFC 4180: поле в кавычках, если в нём есть запятая, кавычка или перевод строки
+    private static String field(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,80 @@
+package org.sergey_white.report;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.sergey_white.entity.AnalysisResult;
+import org.sergey_white.entity.RouteStatistics;
+import org.sergey_white.service.FixedPointPrices;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Отчёт в JSON: один результат - объектом, набор результатов - всегда массивом.
+ * Цены выводятся в рублях числами, время полёта - в минутах.
+ */
+public class JsonReportRenderer implements ReportRenderer {
+    private static final JsonFactory FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    /**
+     * Массив объектов при любом числе маршрутов, в том числе одном и нуле.
+     */
+    @Override
+    public void render(Collection<AnalysisResult> results, Writer out) throws IOException {
+        try (JsonGenerator generator = FACTORY.createGenerator(out)) {
+            generator.writeStartArray();
+            for (AnalysisResult result : results) {
+                writeResult(generator, result);
+            }
+            generator.writeEndArray();
+        }
+        out.write(System.lineSeparator());
+    }
+
+    @Override
+    public void render(AnalysisResult result, Writer out) throws IOException {
+        try (JsonGenerator generator = FACTORY.createGenerator(out)) {
+            writeResult(generator, result);
+        }
+        out.write(System.lineSeparator());
+    }
+
+    private void writeResult(JsonGenerator generator, AnalysisResult result) throws IOException {
+        RouteStatistics statistics = result.getStatistics();
+        generator.writeStartObject();
+        generator.writeStringField("origin_name", statistics.getOriginName());
+        generator.writeStringField("destination_name", statistics.getDestinationName());
+        generator.writeNumberField("ticket_count", statistics.getTicketCount());
+        if (statistics.getTicketCount() > 0) {
+            generator.writeObjectFieldStart("min_flight_minutes");
+            for (Map.Entry<String, Long> entry : statistics.getMinFlightTimes().entrySet()) {
+                generator.writeNumberField(entry.getKey(), entry.getValue());
+            }
+            generator.writeEndObject();
+            writePrice(generator, "average_price", FixedPointPrices.format(statistics.getAveragePriceKopecks()));
+            writePrice(generator, "median_price", FixedPointPrices.format(statistics.getMedianPriceKopecks(),
+                    statistics.getExactMedianPrice()));
+            writePrice(generator, "price_difference", FixedPointPrices.format(statistics.getPriceDifferenceKopecks(),
+                    statistics.getExactPriceDifference()));
+            if (statistics.isMedianApproximate()) {
+                generator.writeBooleanField("median_approximate", true);
+            }
+            if (!result.getApproximatePricePercentiles().isEmpty()) {
+                generator.writeObjectFieldStart("approximate_price_percentiles");
+                for (Map.Entry<Integer, Long> entry : result.getApproximatePricePercentiles().entrySet()) {
+                    writePrice(generator, "p" + entry.getKey(), FixedPointPrices.format(entry.getValue()));
+                }
+                generator.writeEndObject();
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writePrice(JsonGenerator generator, String field, String rubles) throws IOException {
+        generator.writeFieldName(field);
+        generator.writeNumber(rubles);
+    }
+}
@@ -0,0 +1,18 @@
+package org.sergey_white.report;
+
+public enum ReportFormat {
+    TEXT,
+    JSON,
+    CSV;
+
+    public ReportRenderer renderer() {
+        switch (this) {
+            case JSON:
+                return new JsonReportRenderer();
+            case CSV:
+                return new CsvReportRenderer();
+            default:
+                return new TextReportRenderer();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.sergey_white.report;
+
+import org.sergey_white.entity.AnalysisResult;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Вывод результатов анализа в выбранном формате.
+ * Рендерер только пишет в переданный Writer; буферизацию и сброс выполняет вызывающий код,
+ * чтобы весь отчёт, даже по тысячам маршрутов, уходил через один буферизованный поток.
+ */
+public interface ReportRenderer {
+
+    void render(Collection<AnalysisResult> results, Writer out) throws IOException;
+
+    default void render(AnalysisResult result, Writer out) throws IOException {
+        render(List.of(result), out);
+    }
+}
@@ -0,0 +1,78 @@
+package org.sergey_white.report;
+
+import org.sergey_white.entity.AnalysisResult;
+import org.sergey_white.entity.RouteStatistics;
+import org.sergey_white.service.FixedPointPrices;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Текстовый отчёт на русском языке, как его печатала консольная версия анализатора.
+ * При нескольких маршрутах перед каждым отчётом выводится название маршрута.
+ */
+public class TextReportRenderer implements ReportRenderer {
+    private static final String NEW_LINE = System.lineSeparator();
+
+    @Override
+    public void render(Collection<AnalysisResult> results, Writer out) throws IOException {
+        boolean withHeaders = results.size() > 1;
+        boolean first = true;
+        for (AnalysisResult result : results) {
+            if (withHeaders) {
+                if (!first) {
+                    out.write(NEW_LINE);
+                }
+                RouteStatistics statistics = result.getStatistics();
+                line(out, "Маршрут " + statistics.getOriginName() + " - " + statistics.getDestinationName() + ":");
+            }
+            renderRoute(result, out);
+            first = false;
+        }
+    }
+
+    private void renderRoute(AnalysisResult result, Writer out) throws IOException {
+        RouteStatistics statistics = result.getStatistics();
+        if (statistics.getTicketCount() == 0) {
+            line(out, "Нет данных о рейсах в файле.");
+            return;
+        }
+
+        line(out, "Минимальное время полета для каждого перевозчика:");
+        Map<String, Long> minFlightTimes = statistics.getMinFlightTimes();
+        if (minFlightTimes.isEmpty()) {
+            line(out, "Нет данных о времени полета.");
+        } else {
+            for (Map.Entry<String, Long> entry : minFlightTimes.entrySet()) {
+                long duration = entry.getValue();
+                line(out, entry.getKey() + ": " + duration / 60 + " часов " + duration % 60 + " минут");
+            }
+        }
+
+        out.write(NEW_LINE);
+        line(out, "Средняя цена: " + FixedPointPrices.format(statistics.getAveragePriceKopecks()) + " руб.");
+        String approximate = statistics.isMedianApproximate() ? " (приблизительно)" : "";
+        line(out, "Медиана цены: " + FixedPointPrices.format(statistics.getMedianPriceKopecks(),
+                statistics.getExactMedianPrice()) + " руб." + approximate);
+        line(out, "Разница между средней ценой и медианой: " + FixedPointPrices.format(
+                statistics.getPriceDifferenceKopecks(), statistics.getExactPriceDifference()) + " руб." + approximate);
+
+        Map<Integer, Long> percentiles = result.getApproximatePricePercentiles();
+        if (!percentiles.isEmpty()) {
+            StringBuilder names = new StringBuilder();
+            StringBuilder values = new StringBuilder();
+            for (Map.Entry<Integer, Long> entry : percentiles.entrySet()) {
+                names.append(names.length() == 0 ? "p" : "/p").append(entry.getKey());
+                values.append(values.length() == 0 ? "" : " / ").append(FixedPointPrices.format(entry.getValue()));
+            }
+            line(out, "Приблизительные перцентили цены " + names + ": " + values + " руб.");
+        }
+    }
+
+    private static void line(Writer out, String text) throws IOException {
+        out.write(text);
+        out.write(NEW_LINE);
+    }
+}
@@ -0,0 +1,64 @@
+package org.sergey_white.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма длительностей с фиксированными границами корзин для экспорта в Prometheus.
+ * Запись - поиск корзины и один атомарный инкремент без блокировок; накопительные суммы считаются только при чтении.
+ */
+class LatencyHistogram {
+    static final double[] DEFAULT_BOUNDS_SECONDS = {
+            0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5
+    };
+
+    private final double[] boundsSeconds;
+    private final long[] boundsNanos;
+    // Последняя корзина - всё, что больше верхней границы
+    private final AtomicLongArray buckets;
+    private final LongAdder sumNanos = new LongAdder();
+
+    LatencyHistogram() {
+        this(DEFAULT_BOUNDS_SECONDS);
+    }
+
+    LatencyHistogram(double[] boundsSeconds) {
+        this.boundsSeconds = boundsSeconds.clone();
+        this.boundsNanos = new long[boundsSeconds.length];
+        for (int i = 0; i < boundsSeconds.length; i++) {
+            boundsNanos[i] = Math.round(boundsSeconds[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+        this.buckets = new AtomicLongArray(boundsSeconds.length + 1);
+    }
+
+    void record(long nanos) {
+        int bucket = 0;
+        while (bucket < boundsNanos.length && nanos > boundsNanos[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        sumNanos.add(nanos);
+    }
+
+    double[] boundsSeconds() {
+        return boundsSeconds.clone();
+    }
+
+    /**
+     * Число замеров не больше каждой границы; последний элемент - общее число замеров.
+     */
+    long[] cumulativeCounts() {
+        long[] counts = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += buckets.get(i);
+            counts[i] = total;
+        }
+        return counts;
+    }
+
+    long sumNanos() {
+        return sumNanos.sum();
+    }
+}
@@ -0,0 +1,144 @@
+package org.sergey_white.server;
+
+import org.sergey_white.entity.RouteStatistics;
+import org.sergey_white.service.DatasetHolder;
+import org.sergey_white.service.DatasetSnapshot;
+import org.sergey_white.service.ErrorKind;
+import org.sergey_white.service.FlyAnalyzer;
+import org.sergey_white.service.Phase;
+import org.sergey_white.service.PhaseTiming;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Показатели сервера и анализатора в текстовом формате Prometheus (версия 0.0.4).
+ * Всё берётся из счётчиков {@link FlyAnalyzer}, текущего снимка данных и гистограмм сервера в момент запроса.
+ */
+class PrometheusExporter {
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private final DatasetHolder dataset;
+    private final Map<String, LatencyHistogram> latencies;
+    private final LongAdder routesFound;
+    private final LongAdder routesNotFound;
+
+    /**
+     * @param latencies      гистограммы длительности запросов по точкам входа
+     * @param routesFound    запрошенные маршруты, найденные в снимке
+     * @param routesNotFound запрошенные маршруты, по которым в снимке нет билетов
+     */
+    PrometheusExporter(DatasetHolder dataset, Map<String, LatencyHistogram> latencies,
+                       LongAdder routesFound, LongAdder routesNotFound) {
+        this.dataset = dataset;
+        this.latencies = latencies;
+        this.routesFound = routesFound;
+        this.routesNotFound = routesNotFound;
+    }
+
+    String scrape() {
+        FlyAnalyzer analyzer = dataset.getAnalyzer();
+        DatasetSnapshot snapshot = dataset.current();
+        StringBuilder out = new StringBuilder(4096);
+
+        header(out, "fly_tickets_seen_total", "counter", "Билеты, просмотренные при чтении файлов");
+        sample(out, "fly_tickets_seen_total", "", analyzer.getTicketsSeen());
+        header(out, "fly_tickets_matched_total", "counter", "Билеты запрошенных маршрутов, включая отклонённые");
+        sample(out, "fly_tickets_matched_total", "", analyzer.getTicketsMatched());
+        header(out, "fly_tickets_rejected_total", "counter", "Отклонённые билеты по видам ошибок");
+        for (Map.Entry<ErrorKind, Long> count : analyzer.getErrors().counts().entrySet()) {
+            sample(out, "fly_tickets_rejected_total", label("reason", count.getKey()), count.getValue());
+        }
+
+        header(out, "fly_query_duration_seconds", "histogram", "Длительность запросов к серверу");
+        for (Map.Entry<String, LatencyHistogram> latency : latencies.entrySet()) {
+            histogram(out, "fly_query_duration_seconds", "endpoint=\"" + latency.getKey() + "\"", latency.getValue());
+        }
+
+        // Снимок содержит все маршруты файла, поэтому это не кэш: ненайденный маршрут означает, что билетов нет
+        header(out, "fly_route_queries_total", "counter", "Запрошенные маршруты: найдены ли по ним билеты в снимке");
+        sample(out, "fly_route_queries_total", "{found=\"true\"}", routesFound.sum());
+        sample(out, "fly_route_queries_total", "{found=\"false\"}", routesNotFound.sum());
+
+        long tickets = 0;
+        for (RouteStatistics route : snapshot.getRoutes().routes()) {
+            tickets += route.getTicketCount();
+        }
+        header(out, "fly_dataset_version", "gauge", "Номер загруженного снимка данных");
+        sample(out, "fly_dataset_version", "", snapshot.getVersion());
+        header(out, "fly_dataset_file_bytes", "gauge", "Размер файла, по которому построен снимок");
+        sample(out, "fly_dataset_file_bytes", "", snapshot.getFileSize());
+        header(out, "fly_dataset_routes", "gauge", "Маршрутов в снимке");
+        sample(out, "fly_dataset_routes", "", snapshot.getRoutes().size());
+        header(out, "fly_dataset_tickets", "gauge", "Принятых билетов в снимке");
+        sample(out, "fly_dataset_tickets", "", tickets);
+        header(out, "fly_dataset_symbols", "gauge", "Строк в словаре перевозчиков и городов снимка");
+        sample(out, "fly_dataset_symbols", "",
+                snapshot.getRoutes().dictionary().size() + snapshot.getRoutes().dictionary().carrierCount());
+        header(out, "fly_dataset_loaded_timestamp_seconds", "gauge", "Время загрузки снимка");
+        sample(out, "fly_dataset_loaded_timestamp_seconds", "", snapshot.getLoadedAtMillis() / 1000.0);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        header(out, "fly_memory_used_bytes", "gauge", "Занятая память JVM");
+        sample(out, "fly_memory_used_bytes", "{area=\"heap\"}", memory.getHeapMemoryUsage().getUsed());
+        sample(out, "fly_memory_used_bytes", "{area=\"nonheap\"}", memory.getNonHeapMemoryUsage().getUsed());
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            sample(out, "fly_memory_used_bytes", "{area=\"" + pool.getName() + "\"}", pool.getMemoryUsed());
+        }
+
+        Map<Phase, PhaseTiming> phases = analyzer.getMetrics().snapshot();
+        header(out, "fly_phase_seconds_total", "counter", "Время этапов анализа по часам; доли этапа чтения сложены по потокам");
+        for (PhaseTiming timing : phases.values()) {
+            sample(out, "fly_phase_seconds_total", label("phase", timing.getPhase()), timing.getWallNanos() / NANOS_PER_SECOND);
+        }
+        header(out, "fly_phase_cpu_seconds_total", "counter", "Процессорное время этапов анализа");
+        for (PhaseTiming timing : phases.values()) {
+            if (timing.getPhase().parent() != null) {
+                continue;
+            }
+            sample(out, "fly_phase_cpu_seconds_total", label("phase", timing.getPhase()), timing.getCpuNanos() / NANOS_PER_SECOND);
+        }
+        header(out, "fly_phase_allocated_bytes_total", "counter", "Память, выделенная на этапах анализа");
+        for (PhaseTiming timing : phases.values()) {
+            if (timing.getPhase().parent() != null) {
+                continue;
+            }
+            sample(out, "fly_phase_allocated_bytes_total", label("phase", timing.getPhase()), timing.getAllocatedBytes());
+        }
+        return out.toString();
+    }
+
+    private static void histogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        double[] bounds = histogram.boundsSeconds();
+        long[] counts = histogram.cumulativeCounts();
+        for (int i = 0; i < counts.length; i++) {
+            String bound = i < bounds.length ? BigDecimal.valueOf(bounds[i]).stripTrailingZeros().toPlainString() : "+Inf";
+            sample(out, name + "_bucket", "{" + labels + ",le=\"" + bound + "\"}", counts[i]);
+        }
+        sample(out, name + "_sum", "{" + labels + "}", histogram.sumNanos() / NANOS_PER_SECOND);
+        sample(out, name + "_count", "{" + labels + "}", counts[counts.length - 1]);
+    }
+
+    private static String label(String name, Enum<?> value) {
+        return "{" + name + "=\"" + value.name().toLowerCase() + "\"}";
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append(labels).append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,264 @@
+package org.sergey_white.server;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.sergey_white.entity.AnalysisResult;
+import org.sergey_white.entity.RouteQuery;
+import org.sergey_white.entity.RouteStatistics;
+import org.sergey_white.report.JsonReportRenderer;
+import org.sergey_white.report.ReportRenderer;
+import org.sergey_white.service.DatasetHolder;
+import org.sergey_white.service.DatasetSnapshot;
+import org.sergey_white.service.RouteMatrix;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP-сервер запросов по маршрутам. Статистика по всем маршрутам берётся из текущего снимка {@link DatasetHolder}
+ * и отдаётся из памяти; каждый запрос целиком отвечает по одному снимку, даже если файл в это время перезагружается.
+ * <ul>
+ *     <li>GET /route?from=город&amp;to=город - статистика маршрута;</li>
+ *     <li>POST /routes с массивом [{"origin_name": ..., "destination_name": ...}] - статистика набора маршрутов;
+ *     тело больше {@link #MAX_BATCH_BYTES} байт или больше {@link #MAX_BATCH_ROUTES} маршрутов отклоняется с 413;</li>
+ *     <li>GET /health - проверка доступности и версия снимка данных;</li>
+ *     <li>GET /metrics - показатели в текстовом формате Prometheus, см. {@link PrometheusExporter}.</li>
+ * </ul>
+ * Ответы в JSON в формате {@link JsonReportRenderer}; маршрут без билетов возвращается с нулевым числом билетов.
+ */
+public class TicketQueryServer {
+    public static final int MAX_BATCH_BYTES = 1 << 20;
+    public static final int MAX_BATCH_ROUTES = 10_000;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String JSON_TYPE = "application/json; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ReportRenderer renderer = new JsonReportRenderer();
+    private final DatasetHolder dataset;
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    private final LongAdder routesFound = new LongAdder();
+    private final LongAdder routesNotFound = new LongAdder();
+    private final PrometheusExporter exporter;
+
+    public TicketQueryServer(DatasetHolder dataset, int port) throws IOException {
+        this(dataset, new InetSocketAddress(port), Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param threads число потоков обработки запросов; запросы короткие и не блокируются на вводе-выводе,
+     *                поэтому достаточно пула порядка числа ядер
+     */
+    public TicketQueryServer(DatasetHolder dataset, InetSocketAddress address, int threads) throws IOException {
+        this.dataset = dataset;
+        latencies.put("route", new LatencyHistogram());
+        latencies.put("routes", new LatencyHistogram());
+        this.exporter = new PrometheusExporter(dataset, latencies, routesFound, routesNotFound);
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/route", exchange -> handle(exchange, this::route, latencies.get("route"), JSON_TYPE));
+        server.createContext("/routes", exchange -> handle(exchange, this::batch, latencies.get("routes"), JSON_TYPE));
+        server.createContext("/health", exchange -> handle(exchange, this::health, null, JSON_TYPE));
+        server.createContext("/metrics", exchange -> handle(exchange, this::metrics, null, PrometheusExporter.CONTENT_TYPE));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private String health(HttpExchange exchange) {
+        requireMethod(exchange, "GET");
+        DatasetSnapshot snapshot = dataset.current();
+        return MAPPER.createObjectNode()
+                .put("status", "ok")
+                .put("version", snapshot.getVersion())
+                .put("routes", snapshot.getRoutes().size())
+                .put("loaded_at", snapshot.getLoadedAtMillis())
+                .toString() + "\n";
+    }
+
+    private String metrics(HttpExchange exchange) {
+        requireMethod(exchange, "GET");
+        return exporter.scrape();
+    }
+
+    private String route(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        Map<String, String> parameters = queryParameters(exchange.getRequestURI().getRawQuery());
+        String from = parameters.get("from");
+        String to = parameters.get("to");
+        if (from == null || to == null) {
+            throw new BadRequestException(400, "Нужны параметры from и to");
+        }
+        StringWriter out = new StringWriter();
+        renderer.render(resultOf(dataset.current().getRoutes(), new RouteQuery(from, to)), out);
+        return out.toString();
+    }
+
+    private String batch(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "POST");
+        JsonNode body;
+        try {
+            body = MAPPER.readTree(readBody(exchange, MAX_BATCH_BYTES));
+        } catch (JsonProcessingException e) {
+            throw new BadRequestException(400, "Тело запроса не является JSON: " + e.getOriginalMessage());
+        }
+        if (body == null || body.isMissingNode() || !body.isArray()) {
+            throw new BadRequestException(400, "Ожидается массив маршрутов");
+        }
+        if (body.size() > MAX_BATCH_ROUTES) {
+            throw new BadRequestException(413, "В запросе больше " + MAX_BATCH_ROUTES + " маршрутов");
+        }
+        RouteMatrix routes = dataset.current().getRoutes();
+        List<AnalysisResult> results = new ArrayList<>(body.size());
+        for (JsonNode query : body) {
+            if (!query.path("origin_name").isTextual() || !query.path("destination_name").isTextual()) {
+                throw new BadRequestException(400, "У маршрута должны быть origin_name и destination_name");
+            }
+            results.add(resultOf(routes, new RouteQuery(query.get("origin_name").asText(), query.get("destination_name").asText())));
+        }
+        // Набор результатов рендерер всегда пишет массивом, даже для одного маршрута
+        StringWriter out = new StringWriter();
+        renderer.render(results, out);
+        return out.toString();
+    }
+
+    private AnalysisResult resultOf(RouteMatrix routes, RouteQuery query) {
+        AnalysisResult result = routes.result(query.getOriginName(), query.getDestinationName());
+        if (result != null) {
+            routesFound.increment();
+            return result;
+        }
+        routesNotFound.increment();
+        return new AnalysisResult(RouteStatistics.empty(query.getOriginName(), query.getDestinationName()), Map.of());
+    }
+
+    // latency == null: длительность точки входа не учитывается; отклонённые запросы в гистограмму не попадают
+    private void handle(HttpExchange exchange, Handler handler, LatencyHistogram latency,
+                        String contentType) throws IOException {
+        try (exchange) {
+            long started = System.nanoTime();
+            int status = 200;
+            String body;
+            try {
+                requireExactPath(exchange);
+                body = handler.handle(exchange);
+                if (latency != null) {
+                    latency.record(System.nanoTime() - started);
+                }
+            } catch (BadRequestException e) {
+                status = e.status;
+                body = MAPPER.createObjectNode().put("error", e.getMessage()).toString() + "\n";
+            } catch (IOException | RuntimeException e) {
+                status = 500;
+                body = MAPPER.createObjectNode().put("error", "Внутренняя ошибка: " + e.getMessage()).toString() + "\n";
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", status == 200 ? contentType : JSON_TYPE);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    // Content-Length проверяется до чтения, а тело без длины (chunked) читается не дальше предела
+    private static byte[] readBody(HttpExchange exchange, int limit) throws IOException {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        try {
+            if (length != null && Long.parseLong(length.trim()) > limit) {
+                throw new BadRequestException(413, "Тело запроса больше " + limit + " байт");
+            }
+        } catch (NumberFormatException e) {
+            throw new BadRequestException(400, "Некорректный Content-Length: " + length);
+        }
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            bytes = in.readNBytes(limit + 1);
+        }
+        if (bytes.length > limit) {
+            throw new BadRequestException(413, "Тело запроса больше " + limit + " байт");
+        }
+        return bytes;
+    }
+
+    // Контекст HttpServer совпадает по префиксу: /routeX и /route/anything не должны попадать в обработчик /route
+    private static void requireExactPath(HttpExchange exchange) {
+        if (!exchange.getHttpContext().getPath().equals(exchange.getRequestURI().getPath())) {
+            throw new BadRequestException(404, "Нет такого адреса: " + exchange.getRequestURI().getPath());
+        }
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!method.equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", method);
+            throw new BadRequestException(405, "Метод " + exchange.getRequestMethod() + " не поддерживается");
+        }
+    }
+
+    private static Map<String, String> queryParameters(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            String name = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            try {
+                parameters.putIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                        URLDecoder.decode(value, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException(400, "Некорректная строка запроса: " + e.getMessage());
+            }
+        }
+        return parameters;
+    }
+
+    private interface Handler {
+        String handle(HttpExchange exchange) throws IOException;
+    }
+
+    private static final class BadRequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        private BadRequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
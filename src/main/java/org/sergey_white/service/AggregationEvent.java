@@ -0,0 +1,27 @@
+package org.sergey_white.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR на подсчёт итоговой статистики одного маршрута: медиана, средняя цена и время по перевозчикам.
+ */
+@Name("org.sergey_white.Aggregation")
+@Label("Статистика маршрута")
+@Category("Анализ билетов")
+@StackTrace(false)
+final class AggregationEvent extends jdk.jfr.Event {
+    @Label("Откуда")
+    String origin;
+
+    @Label("Куда")
+    String destination;
+
+    @Label("Билетов")
+    long tickets;
+
+    @Label("Перевозчиков")
+    int carriers;
+}
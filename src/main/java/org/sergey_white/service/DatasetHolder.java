@@ -0,0 +1,233 @@
+package org.sergey_white.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Текущие данные файла с билетами для долгоживущего процесса с горячей перезагрузкой.
+ * <p>
+ * Новый снимок строится в фоне тем же чтением, что и {@link FlyAnalyzer#analyzeAllRoutes}, и публикуется
+ * одной заменой ссылки. Запросы берут снимок через {@link #current()} без блокировок и до конца работают с ним,
+ * поэтому никогда не видят наполовину загруженных данных. Старый снимок освобождается сборщиком мусора,
+ * когда его отпустят все выполняющиеся запросы. У каждого снимка свой {@link SymbolDictionary}: города
+ * и перевозчики прежних версий файла уходят вместе со старым снимком, а ошибки, метрики и счётчики
+ * копятся в переданном анализаторе.
+ * <p>
+ * Каталог файла отслеживается через {@link WatchService}. Перезагрузка начинается, когда события по файлу
+ * прекратились на {@code quietPeriodMillis}, чтобы не читать файл посреди записи. Перезагрузки идут
+ * по одной в одном фоновом потоке; если анализатор читает файл последовательно, перезагрузка занимает
+ * одно ядро и не отнимает остальные у потоков запросов.
+ * <p>
+ * Анализатор с отображением в память читает сам файл, когда тот не менялся весь период тишины.
+ * Новую версию файла стоит подкладывать атомарным переименованием: отображение прежнего файла при этом
+ * остаётся целым. Если файл всё же усекли посреди разбора, снимок не публикуется, а перезагрузка повторяется.
+ * Для источников, которые переписывают файл только на месте, есть режим копирования
+ * ({@code copyBeforeMapping}): файл перед чтением копируется рядом с собой, что удваивает место на диске
+ * и ввод-вывод каждой перезагрузки.
+ */
+public class DatasetHolder implements Closeable {
+    public static final long DEFAULT_QUIET_PERIOD_MILLIS = 500;
+
+    private final FlyAnalyzer analyzer;
+    private final Path file;
+    private final long quietPeriodMillis;
+    private final boolean copyBeforeMapping;
+    private final AtomicReference<DatasetSnapshot> current = new AtomicReference<>();
+    private final Object reloadLock = new Object();
+    // Версия файла, по которой построен текущий снимок; меняется только под reloadLock
+    private FileStamp loadedStamp;
+    private WatchService watchService;
+    private Thread watcher;
+
+    public DatasetHolder(FlyAnalyzer analyzer, Path file) throws IOException {
+        this(analyzer, file, DEFAULT_QUIET_PERIOD_MILLIS);
+    }
+
+    /**
+     * Первый снимок загружается сразу, в потоке вызова.
+     */
+    public DatasetHolder(FlyAnalyzer analyzer, Path file, long quietPeriodMillis) throws IOException {
+        this(analyzer, file, quietPeriodMillis, false);
+    }
+
+    /**
+     * @param copyBeforeMapping читать копию файла вместо отображения самого файла; нужно, только если файл
+     *                          переписывают на месте, а не подменяют переименованием
+     */
+    public DatasetHolder(FlyAnalyzer analyzer, Path file, long quietPeriodMillis, boolean copyBeforeMapping)
+            throws IOException {
+        this.analyzer = analyzer;
+        this.file = file.toAbsolutePath().normalize();
+        this.quietPeriodMillis = quietPeriodMillis;
+        this.copyBeforeMapping = copyBeforeMapping;
+        if (!reload()) {
+            throw new IOException("Файл " + file + " изменился во время загрузки.");
+        }
+    }
+
+    public DatasetSnapshot current() {
+        return current.get();
+    }
+
+    public FlyAnalyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    /**
+     * Перечитывает файл, если его версия ({@link FileStamp}) отличается от версии текущего снимка.
+     * Перезагрузки из фонового потока и из вызывающего кода идут по одной, поэтому версии снимков не повторяются.
+     * Если чтение упало, остаётся прежний снимок.
+     *
+     * @return false, если файл менялся во время чтения и снимок не опубликован
+     */
+    public boolean reload() throws IOException {
+        synchronized (reloadLock) {
+            return reloadIfChanged();
+        }
+    }
+
+    private boolean reloadIfChanged() throws IOException {
+        FileStamp stamp = FileStamp.of(file);
+        DatasetSnapshot snapshot = current.get();
+        if (snapshot != null && stamp.equals(loadedStamp)) {
+            return true;
+        }
+        FlyAnalyzer reader = analyzer.withDictionary(new SymbolDictionary());
+        RouteMatrix routes;
+        if (analyzer.getIngestionMode() == IngestionMode.STREAMING) {
+            routes = reader.analyzeAllRoutes(file.toString());
+        } else if (copyBeforeMapping) {
+            routes = analyzeCopy(reader);
+        } else {
+            if (!awaitQuietPeriod(stamp)) {
+                return false;
+            }
+            try {
+                routes = reader.analyzeAllRoutes(file.toString());
+            } catch (InternalError e) {
+                // Так JVM сообщает об обращении к усечённой части отображения: файл переписали посреди чтения.
+                // Ошибка, не связанная с изменением файла, уходит как IOException, чтобы не остановить наблюдение
+                if (isUnchanged(stamp)) {
+                    throw new IOException("Не удалось прочитать отображённый файл " + file, e);
+                }
+                return false;
+            }
+        }
+        if (!isUnchanged(stamp)) {
+            return false;
+        }
+        long version = snapshot == null ? 1 : snapshot.getVersion() + 1;
+        loadedStamp = stamp;
+        current.set(new DatasetSnapshot(version, routes, stamp.getSize(), stamp.getModified(),
+                System.currentTimeMillis()));
+        return true;
+    }
+
+    private boolean isUnchanged(FileStamp stamp) throws IOException {
+        return stamp.equals(FileStamp.of(file));
+    }
+
+    // Файл отображается в память, только если его не меняли весь период тишины; иначе запись, возможно, идёт
+    private boolean awaitQuietPeriod(FileStamp stamp) throws IOException {
+        if (System.currentTimeMillis() - stamp.getModified() >= quietPeriodMillis) {
+            return true;
+        }
+        try {
+            Thread.sleep(quietPeriodMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Перезагрузка файла " + file + " прервана");
+        }
+        return isUnchanged(stamp);
+    }
+
+    // Копия читается потоком, поэтому усечение файла даёт только короткую копию, которую отсеет проверка версии
+    private RouteMatrix analyzeCopy(FlyAnalyzer reader) throws IOException {
+        Path copy = Files.createTempFile(file.getParent(), "." + file.getFileName() + ".", ".reload");
+        try {
+            Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+            return reader.analyzeAllRoutes(copy.toString());
+        } finally {
+            Files.deleteIfExists(copy);
+        }
+    }
+
+    /**
+     * Запускает фоновое отслеживание файла. Ошибки перезагрузки попадают в предупреждения
+     * {@link FlyAnalyzer#getErrors()}, запросы продолжают обслуживаться прежним снимком.
+     */
+    public synchronized void startWatching() throws IOException {
+        if (watcher != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        watcher = new Thread(this::watch, "dataset-watcher-" + file.getFileName());
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+            watchService = null;
+        }
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher = null;
+        }
+    }
+
+    synchronized boolean isWatching() {
+        return watcher != null && watcher.isAlive();
+    }
+
+    private void watch() {
+        WatchService service = watchService;
+        boolean pending = false;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = pending
+                        ? service.poll(quietPeriodMillis, TimeUnit.MILLISECONDS)
+                        : service.take();
+                if (key == null) {
+                    // Событий не было весь период тишины: запись файла закончена
+                    pending = !tryReload();
+                    continue;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                        pending = true;
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Наблюдение остановлено через close()
+        }
+    }
+
+    // Ошибка чтения не останавливает наблюдение: остаётся прежний снимок, следующая попытка - по следующему событию
+    boolean tryReload() {
+        try {
+            return !Files.exists(file) || reload();
+        } catch (IOException | RuntimeException e) {
+            analyzer.getErrors().warn("Не удалось перезагрузить файл " + file + ": " + e);
+            return true;
+        }
+    }
+}
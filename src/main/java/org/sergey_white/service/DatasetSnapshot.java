@@ -0,0 +1,15 @@
+package org.sergey_white.service;
+
+import lombok.Value;
+
+/**
+ * Неизменяемый снимок данных файла с билетами: статистика по всем маршрутам и версия файла, по которой она построена.
+ */
+@Value
+public class DatasetSnapshot {
+    long version;
+    RouteMatrix routes;
+    long fileSize;
+    long fileModified;
+    long loadedAtMillis;
+}
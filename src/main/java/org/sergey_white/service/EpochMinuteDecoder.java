@@ -0,0 +1,142 @@
+package org.sergey_white.service;
+
+import java.time.format.DateTimeParseException;
+
+/**
+ * Разбор даты "dd.MM.yy" и времени "H:mm"/"HH:mm" сразу в минуты от эпохи, без промежуточных объектов.
+ * Поведение совпадает с DateTimeFormatter в режиме SMART: год двузначный с базой 2000,
+ * день больше длины месяца сдвигается на последний день месяца, "24:00" читается как полночь.
+ */
+final class EpochMinuteDecoder {
+    private static final long DAYS_0000_TO_1970 = 719_528L;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private EpochMinuteDecoder() {
+    }
+
+    static long decode(String dateStr, String timeStr, String timeType) {
+        long epochDay = decodeEpochDay(dateStr, timeType, timeStr);
+        int minuteOfDay = decodeMinuteOfDay(timeStr, timeType, dateStr);
+        return epochDay * MINUTES_PER_DAY + minuteOfDay;
+    }
+
+    private static long decodeEpochDay(String dateStr, String timeType, String timeStr) {
+        if (dateStr.length() != 8 || dateStr.charAt(2) != '.' || dateStr.charAt(5) != '.') {
+            throw dateError(timeType, dateStr, timeStr, firstMismatch(dateStr));
+        }
+        int day = twoDigits(dateStr, 0);
+        int month = twoDigits(dateStr, 3);
+        int year = twoDigits(dateStr, 6);
+        if (day < 0 || month < 0 || year < 0) {
+            throw dateError(timeType, dateStr, timeStr, 0);
+        }
+        if (day < 1 || day > 31 || month < 1 || month > 12) {
+            throw dateError(timeType, dateStr, timeStr, 0);
+        }
+        year += 2000;
+        return epochDay(year, month, Math.min(day, lengthOfMonth(year, month)));
+    }
+
+    private static int decodeMinuteOfDay(String timeStr, String timeType, String dateStr) {
+        int length = timeStr.length();
+        int colon = timeStr.indexOf(':');
+        if (colon < 1 || length - colon != 3) {
+            throw timeError(timeType, dateStr, timeStr, 0);
+        }
+        int hour = 0;
+        for (int i = 0; i < colon; i++) {
+            int digit = timeStr.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw timeError(timeType, dateStr, timeStr, 0);
+            }
+            hour = hour * 10 + digit;
+            if (hour > 24) {
+                throw timeError(timeType, dateStr, timeStr, 0);
+            }
+        }
+        int minute = twoDigits(timeStr, colon + 1);
+        if (minute < 0 || minute > 59) {
+            throw timeError(timeType, dateStr, timeStr, 0);
+        }
+        if (hour == 24) {
+            if (minute != 0) {
+                throw timeError(timeType, dateStr, timeStr, 0);
+            }
+            hour = 0;
+        }
+        return hour * 60 + minute;
+    }
+
+    private static int twoDigits(String value, int offset) {
+        int high = value.charAt(offset) - '0';
+        int low = value.charAt(offset + 1) - '0';
+        if (high < 0 || high > 9 || low < 0 || low > 9) {
+            return -1;
+        }
+        return high * 10 + low;
+    }
+
+    private static int firstMismatch(String dateStr) {
+        return dateStr.length() > 8 ? 8 : 0;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean isLeapYear(long year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    // Тот же расчёт, что в LocalDate.toEpochDay
+    private static long epochDay(int year, int month, int day) {
+        long total = 365L * year;
+        total += (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * Вид ошибки разбора: неверная дата или неверное время.
+     */
+    static ErrorKind errorKind(DateTimeParseException e) {
+        return e instanceof DateParseException ? ErrorKind.DATE_PARSE : ErrorKind.TIME_PARSE;
+    }
+
+    private static DateTimeParseException dateError(String timeType, String dateStr, String timeStr, int errorIndex) {
+        return new DateParseException(message(timeType, dateStr, timeStr), dateStr, errorIndex);
+    }
+
+    private static DateTimeParseException timeError(String timeType, String dateStr, String timeStr, int errorIndex) {
+        return new DateTimeParseException(message(timeType, dateStr, timeStr), timeStr, errorIndex);
+    }
+
+    private static String message(String timeType, String dateStr, String timeStr) {
+        return "Ошибка парсинга " + timeType + " (дата: " + dateStr + ", время: " + timeStr + ")";
+    }
+
+    private static final class DateParseException extends DateTimeParseException {
+        private static final long serialVersionUID = 1L;
+
+        private DateParseException(String message, CharSequence parsedData, int errorIndex) {
+            super(message, parsedData, errorIndex);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package org.sergey_white.service;
+
+import org.sergey_white.entity.RejectedTicket;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Учёт отклонённых билетов вместо вывода ошибки по каждой записи.
+ * Считает ошибки по видам, хранит первые записи с ошибками (не больше sampleSize)
+ * и при необходимости дописывает исходный текст отклонённых билетов в файл карантина, по объекту на строку.
+ * Предупреждения хранятся последние, не больше {@link #MAX_WARNINGS}.
+ * Счётчики и выборка без блокировок, поэтому учёт работает и при параллельном чтении;
+ * блокируются только запись в карантин и редкие предупреждения.
+ */
+public class ErrorAccounting implements Closeable {
+    public static final int DEFAULT_SAMPLE_SIZE = 10;
+    public static final int MAX_WARNINGS = 100;
+
+    private final LongAdder[] counters = new LongAdder[ErrorKind.values().length];
+    private final AtomicReferenceArray<RejectedTicket> sample;
+    private final AtomicInteger sampled = new AtomicInteger();
+    // Последние MAX_WARNINGS предупреждений: долгоживущий сервер не должен копить их без предела
+    private final Deque<String> warnings = new ArrayDeque<>();
+    private long droppedWarnings;
+    private volatile Path quarantineFile;
+    private BufferedWriter quarantine;
+
+    public ErrorAccounting() {
+        this(DEFAULT_SAMPLE_SIZE);
+    }
+
+    public ErrorAccounting(int sampleSize) {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        sample = new AtomicReferenceArray<>(sampleSize);
+    }
+
+    /**
+     * Файл карантина; null отключает запись. Файл дописывается, а не перезаписывается.
+     */
+    public synchronized void setQuarantineFile(Path quarantineFile) throws IOException {
+        close();
+        this.quarantineFile = quarantineFile;
+    }
+
+    /**
+     * Нужен ли исходный текст записи: он читается только для выборки и карантина.
+     */
+    boolean wantsJson() {
+        return quarantineFile != null || sampled.get() < sample.length();
+    }
+
+    void reject(ErrorKind kind, String carrier, String message, String json) {
+        counters[kind.ordinal()].increment();
+        if (sampled.get() < sample.length()) {
+            int index = sampled.getAndIncrement();
+            if (index < sample.length()) {
+                sample.set(index, new RejectedTicket(kind, carrier, message, json));
+            }
+        }
+        if (quarantineFile != null && json != null) {
+            writeQuarantine(json);
+        }
+    }
+
+    /**
+     * Сбой, который не отменяет анализ (индекс или карантин не записан); выводится в {@link #summary()}.
+     */
+    void warn(String message) {
+        synchronized (warnings) {
+            if (warnings.size() == MAX_WARNINGS) {
+                warnings.removeFirst();
+                droppedWarnings++;
+            }
+            warnings.addLast(message);
+        }
+    }
+
+    /**
+     * Последние предупреждения, не больше {@link #MAX_WARNINGS}, от старых к новым.
+     */
+    public List<String> warnings() {
+        synchronized (warnings) {
+            return List.copyOf(warnings);
+        }
+    }
+
+    /**
+     * Предупреждения, вытесненные более новыми.
+     */
+    public long droppedWarnings() {
+        synchronized (warnings) {
+            return droppedWarnings;
+        }
+    }
+
+    public long count(ErrorKind kind) {
+        return counters[kind.ordinal()].sum();
+    }
+
+    public long total() {
+        long total = 0;
+        for (LongAdder counter : counters) {
+            total += counter.sum();
+        }
+        return total;
+    }
+
+    public Map<ErrorKind, Long> counts() {
+        Map<ErrorKind, Long> counts = new EnumMap<>(ErrorKind.class);
+        for (ErrorKind kind : ErrorKind.values()) {
+            counts.put(kind, count(kind));
+        }
+        return counts;
+    }
+
+    public List<RejectedTicket> sample() {
+        List<RejectedTicket> records = new ArrayList<>();
+        for (int i = 0; i < sample.length(); i++) {
+            RejectedTicket record = sample.get(i);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        return Collections.unmodifiableList(records);
+    }
+
+    /**
+     * Итог по отклонённым билетам: число по видам ошибок и примеры записей, затем предупреждения.
+     * Пустая строка, если ошибок и предупреждений не было.
+     */
+    public String summary() {
+        String newLine = System.lineSeparator();
+        StringBuilder summary = new StringBuilder();
+        long total = total();
+        if (total > 0) {
+            appendRejects(summary, total, newLine);
+        }
+        long dropped = droppedWarnings();
+        if (dropped > 0) {
+            summary.append("Более ранних предупреждений: ").append(dropped).append(newLine);
+        }
+        for (String warning : warnings()) {
+            summary.append("Предупреждение: ").append(warning).append(newLine);
+        }
+        return summary.toString();
+    }
+
+    private void appendRejects(StringBuilder summary, long total, String newLine) {
+        summary.append("Отклонено билетов: ").append(total).append(" (");
+        boolean first = true;
+        for (ErrorKind kind : ErrorKind.values()) {
+            long count = count(kind);
+            if (count > 0) {
+                summary.append(first ? "" : ", ").append(kind.description()).append(": ").append(count);
+                first = false;
+            }
+        }
+        summary.append(')').append(newLine);
+        List<RejectedTicket> records = sample();
+        if (!records.isEmpty()) {
+            summary.append("Примеры:").append(newLine);
+            for (RejectedTicket record : records) {
+                summary.append("  [").append(record.getKind().description()).append("] рейс ")
+                        .append(record.getCarrier()).append(": ").append(record.getMessage()).append(newLine);
+            }
+        }
+        if (quarantineFile != null) {
+            summary.append("Отклонённые записи сохранены в ").append(quarantineFile).append(newLine);
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        if (quarantine != null) {
+            quarantine.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (quarantine != null) {
+            quarantine.close();
+            quarantine = null;
+        }
+    }
+
+    private synchronized void writeQuarantine(String json) {
+        if (quarantineFile == null) {
+            return;
+        }
+        try {
+            if (quarantine == null) {
+                quarantine = Files.newBufferedWriter(quarantineFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            // Одна запись - одна строка: в разобранном JSON переводы строк бывают только между лексемами
+            quarantine.write(json.replace('\r', ' ').replace('\n', ' '));
+            quarantine.newLine();
+        } catch (IOException e) {
+            // Карантин не должен прерывать анализ: одно предупреждение и запись отключается
+            warn("Не удалось записать карантин " + quarantineFile + ": " + e.getMessage());
+            quarantineFile = null;
+        }
+    }
+}
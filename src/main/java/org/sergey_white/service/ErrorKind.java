@@ -0,0 +1,18 @@
+package org.sergey_white.service;
+
+public enum ErrorKind {
+    DATE_PARSE("ошибка даты"),
+    TIME_PARSE("ошибка времени"),
+    PRICE_FORMAT("ошибка формата цены"),
+    NEGATIVE_PRICE("отрицательная цена");
+
+    private final String description;
+
+    ErrorKind(String description) {
+        this.description = description;
+    }
+
+    public String description() {
+        return description;
+    }
+}
@@ -0,0 +1,37 @@
+package org.sergey_white.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR на одно чтение файла с билетами. Пока запись не идёт, begin/end/commit ничего не делают.
+ */
+@Name("org.sergey_white.FileIngestion")
+@Label("Чтение файла с билетами")
+@Category("Анализ билетов")
+@StackTrace(false)
+final class FileIngestionEvent extends jdk.jfr.Event {
+    @Label("Файл")
+    String file;
+
+    @Label("Способ чтения")
+    String mode;
+
+    @Label("Размер файла")
+    @DataAmount
+    long bytes;
+
+    @Label("Просмотрено билетов")
+    long ticketsSeen;
+
+    @Label("Билетов нужных маршрутов")
+    @Description("Билеты, прошедшие фильтр маршрута, включая отклонённые")
+    long ticketsMatched;
+
+    @Label("Отклонено билетов")
+    long rejects;
+}
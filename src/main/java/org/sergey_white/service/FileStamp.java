@@ -0,0 +1,55 @@
+package org.sergey_white.service;
+
+import lombok.Value;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.CRC32;
+
+/**
+ * Версия файла данных: размер, время изменения, ключ файла (на Linux - устройство и inode)
+ * и CRC32 первого и последнего блоков. Время изменения меняется с точностью файловой системы,
+ * поэтому перезапись на месте с тем же размером в пределах одной отметки времени видна по содержимому краёв,
+ * а подмена файла переименованием - по ключу.
+ */
+@Value
+class FileStamp {
+    static final int EDGE_BLOCK_SIZE = 4096;
+
+    long size;
+    long modified;
+    String fileKey;
+    long edgeChecksum;
+
+    static FileStamp of(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            CRC32 crc = new CRC32();
+            update(crc, channel, 0, Math.min(size, EDGE_BLOCK_SIZE));
+            if (size > EDGE_BLOCK_SIZE) {
+                long tail = Math.max(EDGE_BLOCK_SIZE, size - EDGE_BLOCK_SIZE);
+                update(crc, channel, tail, size - tail);
+            }
+            return new FileStamp(size, attributes.lastModifiedTime().toMillis(),
+                    String.valueOf(attributes.fileKey()), crc.getValue());
+        }
+    }
+
+    private static void update(CRC32 crc, FileChannel channel, long position, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            // Файл укоротили между чтением размера и блока: контрольная сумма просто не совпадёт
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        crc.update(buffer);
+    }
+}
@@ -0,0 +1,222 @@
+package org.sergey_white.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Цены в копейках как long: разбор, округление HALF_UP и форматирование без BigDecimal.
+ * Результаты совпадают с прежним расчётом через BigDecimal; к нему разбор возвращается
+ * только для редких случаев (ошибки формата, очень длинные мантиссы и большие экспоненты),
+ * чтобы сохранить те же исключения и сообщения.
+ * В отличие от прежнего расчёта цена должна помещаться в long копеек (до 92 233 720 368 547 758.07 руб.):
+ * цены больше, например "1e1000", отклоняются как ошибка формата цены.
+ */
+public final class FixedPointPrices {
+    private static final int MAX_FAST_DIGITS = 17;
+    private static final int MAX_FAST_EXPONENT = 100;
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private FixedPointPrices() {
+    }
+
+    /**
+     * Разбирает цену в формате BigDecimal ("12400", "12400.5", "1.24E4") в копейки с округлением HALF_UP.
+     *
+     * @throws NumberFormatException если строка не является числом или цена не помещается в long
+     */
+    public static long parseKopecks(String text) {
+        int length = text.length();
+        int position = 0;
+        boolean negative = false;
+        if (position < length && (text.charAt(position) == '-' || text.charAt(position) == '+')) {
+            negative = text.charAt(position) == '-';
+            position++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        boolean seenDigit = false;
+        for (; position < length; position++) {
+            char c = text.charAt(position);
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (mantissa != 0 || c != '0') {
+                    digits++;
+                }
+                if (digits > MAX_FAST_DIGITS) {
+                    return parseSlow(text);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (!seenDigit) {
+            return parseSlow(text);
+        }
+        int exponent = 0;
+        if (position < length) {
+            char c = text.charAt(position);
+            if (c != 'e' && c != 'E') {
+                return parseSlow(text);
+            }
+            position++;
+            boolean negativeExponent = false;
+            if (position < length && (text.charAt(position) == '-' || text.charAt(position) == '+')) {
+                negativeExponent = text.charAt(position) == '-';
+                position++;
+            }
+            if (position == length) {
+                return parseSlow(text);
+            }
+            for (; position < length; position++) {
+                char d = text.charAt(position);
+                if (d < '0' || d > '9' || exponent > MAX_FAST_EXPONENT) {
+                    return parseSlow(text);
+                }
+                exponent = exponent * 10 + (d - '0');
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+
+        // Число = mantissa * 10^(exponent - fractionDigits), в копейках показатель больше на 2
+        int shift = exponent - fractionDigits + 2;
+        long kopecks;
+        if (shift >= 0) {
+            if (shift >= POWERS_OF_TEN.length) {
+                return mantissa == 0 ? 0 : parseSlow(text);
+            }
+            try {
+                kopecks = Math.multiplyExact(mantissa, POWERS_OF_TEN[shift]);
+            } catch (ArithmeticException e) {
+                return parseSlow(text);
+            }
+        } else if (-shift >= POWERS_OF_TEN.length) {
+            kopecks = 0;
+        } else {
+            kopecks = divideHalfUp(mantissa, POWERS_OF_TEN[-shift]);
+        }
+        return negative ? -kopecks : kopecks;
+    }
+
+    /**
+     * Точное значение цены, уже разобранной {@link #parseKopecks}, если в ней есть доли копейки; иначе null.
+     * Обычные цены с не более чем двумя знаками после точки проверяются без создания объектов.
+     */
+    public static BigDecimal subKopeckPrice(String text) {
+        int point = -1;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == 'e' || c == 'E') {
+                BigDecimal price = new BigDecimal(text);
+                return isWholeKopecks(price) ? null : price;
+            }
+            if (c == '.') {
+                point = i;
+            } else if (point >= 0 && i - point > 2 && c != '0') {
+                return new BigDecimal(text);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Неотрицательное деление с округлением HALF_UP.
+     */
+    public static long divideHalfUp(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+        return remainder >= divisor - remainder ? quotient + 1 : quotient;
+    }
+
+    /**
+     * Округляет сумму в копейках, делённую на count, до целых рублей (HALF_UP); результат в копейках.
+     */
+    public static long averageRubles(long sumKopecks, long count) {
+        return divideHalfUp(sumKopecks, Math.multiplyExact(count, 100L)) * 100;
+    }
+
+    /**
+     * Среднее двух цен с округлением HALF_UP до целых рублей, как медиана чётного числа цен; результат в копейках.
+     */
+    public static long midpointRubles(long lowerKopecks, long upperKopecks) {
+        long sum;
+        try {
+            sum = Math.addExact(lowerKopecks, upperKopecks);
+        } catch (ArithmeticException e) {
+            return BigDecimal.valueOf(lowerKopecks).add(BigDecimal.valueOf(upperKopecks))
+                    .divide(BigDecimal.valueOf(200), 0, RoundingMode.HALF_UP)
+                    .longValueExact() * 100;
+        }
+        return divideHalfUp(sum, 200) * 100;
+    }
+
+    /**
+     * Целые рубли выводятся без дробной части, остальные суммы - с двумя знаками после точки.
+     */
+    public static String format(long kopecks) {
+        long rubles = kopecks / 100;
+        long remainder = Math.abs(kopecks % 100);
+        if (remainder == 0) {
+            return Long.toString(rubles);
+        }
+        String sign = kopecks < 0 && rubles == 0 ? "-" : "";
+        return sign + rubles + (remainder < 10 ? ".0" : ".") + remainder;
+    }
+
+    /**
+     * Цена в рублях, заданная точно: целые рубли без дробной части, остальные суммы - с двумя знаками (HALF_UP).
+     */
+    public static String format(BigDecimal rubles) {
+        if (rubles.signum() == 0 || rubles.stripTrailingZeros().scale() <= 0) {
+            return rubles.setScale(0, RoundingMode.UNNECESSARY).toPlainString();
+        }
+        return rubles.setScale(2, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    /**
+     * Точное значение, если оно задано, иначе значение в копейках.
+     */
+    public static String format(long kopecks, BigDecimal exactRubles) {
+        return exactRubles != null ? format(exactRubles) : format(kopecks);
+    }
+
+    public static boolean isWholeKopecks(BigDecimal rubles) {
+        return rubles.signum() == 0 || rubles.stripTrailingZeros().scale() <= 2;
+    }
+
+    /**
+     * Округление точной цены в рублях до копеек HALF_UP.
+     */
+    public static long toKopecks(BigDecimal rubles) {
+        return rubles.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(long kopecks) {
+        return BigDecimal.valueOf(kopecks, 2);
+    }
+
+    private static long parseSlow(String text) {
+        BigDecimal price = new BigDecimal(text);
+        try {
+            return price.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Цена вне допустимого диапазона: " + price);
+        }
+    }
+}
@@ -1,186 +1,680 @@
 package org.sergey_white.service;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.sergey_white.entity.Ticket;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.sergey_white.entity.AnalysisResult;
+import org.sergey_white.entity.CompactTicket;
+import org.sergey_white.entity.RouteQuery;
+import org.sergey_white.storage.TicketStore;
+import org.sergey_white.storage.TicketTable;
 
+import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
 
 public class FlyAnalyzer {
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yy");
-    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("[H:mm][HH:mm]");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
 
-    public void analyze(String fileName, String departurePoint, String arrivalPoint) {
-        try {
-            List<Ticket> tickets = readTicketsFromFile(fileName, departurePoint, arrivalPoint);
-            if (tickets.isEmpty()) {
-                System.out.println("Нет данных о рейсах в файле.");
-                return;
+    private final IngestionMode ingestionMode;
+    private final SymbolDictionary dictionary;
+    private final Map<Path, RouteIndex> routeIndexes;
+    private final Map<Path, Object> routeIndexLocks;
+    private final ErrorAccounting errors;
+    private final PhaseMetrics metrics;
+    private final LongAdder ticketsSeen;
+    private final LongAdder ticketsMatched;
+    private boolean approximatePercentiles;
+
+    public FlyAnalyzer() {
+        this(IngestionMode.STREAMING);
+    }
+
+    public FlyAnalyzer(IngestionMode ingestionMode) {
+        this(ingestionMode, new SymbolDictionary());
+    }
+
+    public FlyAnalyzer(IngestionMode ingestionMode, SymbolDictionary dictionary) {
+        this.ingestionMode = ingestionMode;
+        this.dictionary = dictionary;
+        this.routeIndexes = new ConcurrentHashMap<>();
+        this.routeIndexLocks = new ConcurrentHashMap<>();
+        this.errors = new ErrorAccounting();
+        this.metrics = new PhaseMetrics();
+        this.ticketsSeen = new LongAdder();
+        this.ticketsMatched = new LongAdder();
+    }
+
+    private FlyAnalyzer(FlyAnalyzer shared, SymbolDictionary dictionary) {
+        this.ingestionMode = shared.ingestionMode;
+        this.dictionary = dictionary;
+        this.routeIndexes = shared.routeIndexes;
+        this.routeIndexLocks = shared.routeIndexLocks;
+        this.errors = shared.errors;
+        this.metrics = shared.metrics;
+        this.ticketsSeen = shared.ticketsSeen;
+        this.ticketsMatched = shared.ticketsMatched;
+        this.approximatePercentiles = shared.approximatePercentiles;
+    }
+
+    /**
+     * Анализатор с другим словарём, но с тем же режимом, учётом ошибок, метриками, счётчиками и индексами маршрутов.
+     * Так каждый снимок данных получает свой словарь, а показатели копятся в одном месте.
+     */
+    public FlyAnalyzer withDictionary(SymbolDictionary dictionary) {
+        return new FlyAnalyzer(this, dictionary);
+    }
+
+    public IngestionMode getIngestionMode() {
+        return ingestionMode;
+    }
+
+    public SymbolDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Отклонённые билеты по всем чтениям этого анализатора.
+     */
+    public ErrorAccounting getErrors() {
+        return errors;
+    }
+
+    /**
+     * Время и аллокации по этапам всех анализов этого анализатора.
+     */
+    public PhaseMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Объекты-билеты, просмотренные во всех чтениях файлов (в режиме INDEXED - найденные по индексу).
+     */
+    public long getTicketsSeen() {
+        return ticketsSeen.sum();
+    }
+
+    /**
+     * Билеты запрошенных маршрутов, включая отклонённые.
+     */
+    public long getTicketsMatched() {
+        return ticketsMatched.sum();
+    }
+
+    /**
+     * Перцентили цены по скетчу {@link KllSketch} вместо массива всех цен маршрута.
+     * Медиана и разница со средней ценой при чтении файла и хранилища в этом режиме тоже приближённые
+     * и помечаются в {@link org.sergey_white.entity.RouteStatistics#isMedianApproximate()};
+     * анализ {@link TicketTable} по-прежнему выбирает медиану точно по колонке цен.
+     */
+    public void setApproximatePercentiles(boolean approximatePercentiles) {
+        this.approximatePercentiles = approximatePercentiles;
+    }
+
+    public AnalysisResult analyze(String fileName, String departurePoint, String arrivalPoint) throws IOException {
+        // Все показатели считаются за один проход прямо во время чтения файла
+        RouteAggregator aggregator = readTicketsFromFile(fileName, departurePoint, arrivalPoint,
+                RouteAggregator.collector(dictionary.carrierCount(), approximatePercentiles));
+        PhaseMetrics.Measurement statistics = metrics.start();
+        AnalysisResult result = aggregator.toResult(departurePoint, arrivalPoint, dictionary);
+        metrics.stop(Phase.STATISTICS, statistics);
+        return result;
+    }
+
+    public RouteMatrix analyzeAllRoutes(String fileName) throws IOException {
+        Map<Long, RouteAggregator> routes = readTicketsFromFile(fileName, null, null,
+                RouteAggregator.byRouteCollector(dictionary.carrierCount(), approximatePercentiles));
+        PhaseMetrics.Measurement statistics = metrics.start();
+        RouteMatrix matrix = new RouteMatrix(routes, dictionary);
+        metrics.stop(Phase.STATISTICS, statistics);
+        return matrix;
+    }
+
+    /**
+     * Статистика по набору маршрутов за одно чтение файла.
+     * Результаты идут в порядке запросов; маршрут без билетов получает статистику с нулевым числом билетов.
+     */
+    public Map<RouteQuery, AnalysisResult> analyzeBatch(String fileName, Collection<RouteQuery> queries) throws IOException {
+        List<RouteQuery> routes = new ArrayList<>(new LinkedHashSet<>(queries));
+        Map<Long, RouteAggregator> aggregators = routes.isEmpty()
+                ? new LinkedHashMap<>()
+                : readTicketsFromFile(fileName, routes,
+                RouteAggregator.byRouteCollector(dictionary.carrierCount(), approximatePercentiles));
+
+        PhaseMetrics.Measurement statistics = metrics.start();
+        Map<RouteQuery, AnalysisResult> results = new LinkedHashMap<>();
+        for (RouteQuery route : routes) {
+            int origin = dictionary.find(route.getOriginName());
+            int destination = dictionary.find(route.getDestinationName());
+            RouteAggregator aggregator = origin < 0 || destination < 0
+                    ? null
+                    : aggregators.get(TicketTable.routeKey(origin, destination));
+            if (aggregator == null) {
+                aggregator = new RouteAggregator(0, false);
+            }
+            results.put(route, aggregator.toResult(route.getOriginName(), route.getDestinationName(), dictionary));
+        }
+        metrics.stop(Phase.STATISTICS, statistics);
+        return results;
+    }
+
+    public TicketTable loadTable(String fileName, String departurePoint, String arrivalPoint) throws IOException {
+        return load(fileName, departurePoint, arrivalPoint, new TicketTable());
+    }
+
+    public <S extends TicketStore> S load(String fileName, String departurePoint, String arrivalPoint, S store) throws IOException {
+        return readTicketsFromFile(fileName, departurePoint, arrivalPoint, storeCollector(store));
+    }
+
+    private <S extends TicketStore> Collector<CompactTicket, ?, S> storeCollector(S store) {
+        if (ingestionMode != IngestionMode.PARALLEL) {
+            // Билеты пишутся в хранилище по мере чтения, без промежуточного списка
+            return Collector.of(() -> store, TicketStore::add, (left, right) -> left,
+                    Collector.Characteristics.IDENTITY_FINISH);
+        }
+        // Диапазон копит только свои билеты; диапазоны дописываются в хранилище в порядке файла по мере готовности
+        return Collector.<CompactTicket, List<CompactTicket>, S>of(ArrayList::new, List::add, (appended, part) -> {
+            part.forEach(store::add);
+            return appended;
+        }, appended -> store);
+    }
+
+    /**
+     * Статистика по всем записям хранилища, например загруженного {@link #load} по одному маршруту.
+     */
+    public AnalysisResult analyze(TicketStore store) {
+        return analyze(store, null, null);
+    }
+
+    /**
+     * Статистика по записям хранилища с заданным маршрутом; маршрут null означает все записи.
+     * Хранилище должно быть загружено этим анализатором: маршрут сравнивается по идентификаторам его словаря.
+     */
+    public AnalysisResult analyze(TicketStore store, String departurePoint, String arrivalPoint) {
+        PhaseMetrics.Measurement read = metrics.start();
+        RouteAggregator aggregator = new RouteAggregator(dictionary.carrierCount(), approximatePercentiles);
+        int originNameId = departurePoint == null ? -1 : dictionary.find(departurePoint);
+        int destinationNameId = arrivalPoint == null ? -1 : dictionary.find(arrivalPoint);
+        // Город, которого нет в словаре, не встречался ни в одном загруженном билете
+        boolean unknownRoute = departurePoint != null && (originNameId < 0 || destinationNameId < 0);
+        for (int row = 0; row < store.size() && !unknownRoute; row++) {
+            if (departurePoint != null && (store.originNameId(row) != originNameId
+                    || store.destinationNameId(row) != destinationNameId)) {
+                continue;
             }
+            aggregator.accept(store.carrierId(row), store.departureMinute(row), store.arrivalMinute(row),
+                    store.priceKopecks(row), store.exactPrice(row));
+        }
+        metrics.stop(Phase.READ, read);
+        return statistics(aggregator, departurePoint, arrivalPoint);
+    }
 
-            Map<String, Long> minFlightTimes = calculateMinFlightTimes(tickets);
-            printMinFlightTimes(minFlightTimes);
+    public AnalysisResult analyze(TicketTable table) {
+        return analyze(table, null, null);
+    }
 
-            List<BigDecimal> prices = extractPrices(tickets);
-            printPriceStatistics(prices);
+    /**
+     * Статистика по строкам таблицы с заданным маршрутом; маршрут null означает все строки.
+     * Строки выбираются по колонке маршрутов, цены маршрута одним проходом собираются в массив точного размера,
+     * на котором и выбирается медиана: колонку цен выбор переставил бы, поэтому она не отдаётся ему сама.
+     */
+    public AnalysisResult analyze(TicketTable table, String departurePoint, String arrivalPoint) {
+        if (table.hasExactPrices()) {
+            // Цены с долями копейки считаются построчно вместе с точными значениями
+            return analyze((TicketStore) table, departurePoint, arrivalPoint);
+        }
+        int size = table.size();
+        int[] carrierIds = table.carrierIds();
+        long[] departures = table.departureMinutes();
+        long[] arrivals = table.arrivalMinutes();
+        long[] prices = table.pricesKopecks();
+        int[] routeIds = table.routeIds();
 
-        } catch (IOException e) {
-            System.err.println("Ошибка при обработке файла: " + e.getMessage());
-            e.printStackTrace();
+        PhaseMetrics.Measurement read = metrics.start();
+        RouteAggregator aggregator = new RouteAggregator(dictionary.carrierCount(), approximatePercentiles);
+        if (departurePoint == null) {
+            for (int i = 0; i < size; i++) {
+                aggregator.acceptFlightTime(carrierIds[i], departures[i], arrivals[i]);
+            }
+            aggregator.acceptPrices(Arrays.copyOf(prices, size), size);
+        } else {
+            int route = table.routeIdOf(dictionary.find(departurePoint), dictionary.find(arrivalPoint));
+            int count = 0;
+            for (int i = 0; i < size && route >= 0; i++) {
+                if (routeIds[i] == route) {
+                    count++;
+                }
+            }
+            long[] routePrices = new long[count];
+            for (int i = 0, row = 0; row < count; i++) {
+                if (routeIds[i] == route) {
+                    aggregator.acceptFlightTime(carrierIds[i], departures[i], arrivals[i]);
+                    routePrices[row++] = prices[i];
+                }
+            }
+            aggregator.acceptPrices(routePrices, count);
         }
+        metrics.stop(Phase.READ, read);
+        return statistics(aggregator, departurePoint, arrivalPoint);
+    }
+
+    private AnalysisResult statistics(RouteAggregator aggregator, String departurePoint, String arrivalPoint) {
+        PhaseMetrics.Measurement statistics = metrics.start();
+        AnalysisResult result = aggregator.toResult(departurePoint, arrivalPoint, dictionary);
+        metrics.stop(Phase.STATISTICS, statistics);
+        return result;
+    }
+
+    <A, R> R readTicketsFromFile(String fileName, String departurePoint, String arrivePoint,
+                                 Collector<CompactTicket, A, R> collector) throws IOException {
+        List<RouteQuery> routes = departurePoint == null ? null : List.of(new RouteQuery(departurePoint, arrivePoint));
+        return readTicketsFromFile(fileName, routes, collector);
     }
 
-    private List<Ticket> readTicketsFromFile(String fileName, String departurePoint, String arrivePoint) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
+    // routes == null означает все маршруты файла
+    private <A, R> R readTicketsFromFile(String fileName, List<RouteQuery> routes,
+                                         Collector<CompactTicket, A, R> collector) throws IOException {
         File jsonFile = new File(fileName);
         if (!jsonFile.exists()) {
             throw new IOException("Файл " + fileName + " не найден в текущей директории.");
         }
 
-        JsonNode root = mapper.readTree(jsonFile);
-        JsonNode ticketsNode = root.path("tickets");
-        List<Ticket> tickets = new ArrayList<>();
+        FileIngestionEvent event = new FileIngestionEvent();
+        event.begin();
+        Throwable failure = null;
+        try {
+            return readTickets(jsonFile, routes, collector, event);
+        } catch (IOException | RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            ticketsSeen.add(event.ticketsSeen);
+            ticketsMatched.add(event.ticketsMatched);
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = jsonFile.getPath();
+                event.mode = ingestionMode.name();
+                event.bytes = jsonFile.length();
+                event.commit();
+            }
+            flushQuarantine(failure);
+        }
+    }
 
-        for (JsonNode node : ticketsNode) {
-            if (!isSearchFly(departurePoint, arrivePoint, node)) {
-                continue;
+    // Ошибка записи карантина не должна скрыть исключение, которым прервалось чтение
+    private void flushQuarantine(Throwable failure) throws IOException {
+        try {
+            errors.flush();
+        } catch (IOException e) {
+            if (failure == null) {
+                throw e;
             }
-            Ticket ticket = new Ticket();
-            ticket.setCarrier(node.path("carrier").asText());
-
-            try {
-                LocalDateTime departureDateTime = parseDateTime(
-                        node.path("departure_date").asText(),
-                        node.path("departure_time").asText(),
-                        "отправления"
-                );
-                LocalDateTime arrivalDateTime = parseDateTime(
-                        node.path("arrival_date").asText(),
-                        node.path("arrival_time").asText(),
-                        "прибытия"
-                );
-
-                ticket.setDepartureDateTime(departureDateTime);
-                ticket.setArrivalDateTime(arrivalDateTime);
-                BigDecimal price = new BigDecimal(node.path("price").asText("0"));
-                if (price.compareTo(BigDecimal.ZERO) < 0) {
-                    throw new IllegalArgumentException("Цена не может быть отрицательной: " + price);
-                }
-                ticket.setPrice(price);
+            failure.addSuppressed(e);
+        }
+    }
 
-                tickets.add(ticket);
-            } catch (DateTimeParseException e) {
-                System.err.println("Ошибка парсинга времени для рейса " + node.path("carrier").asText() + ": " + e.getMessage());
-            } catch (NumberFormatException e) {
-                System.err.println("Ошибка парсинга цены для рейса " + node.path("carrier").asText() + ": " + e.getMessage());
+    private <A, R> R readTickets(File jsonFile, List<RouteQuery> routes, Collector<CompactTicket, A, R> collector,
+                                 FileIngestionEvent event) throws IOException {
+        Predicate<JsonNode> selection = routeSelection(routes);
+        if (ingestionMode != IngestionMode.STREAMING) {
+            return readMappedTickets(jsonFile, routes, selection, collector, event);
+        }
+
+        A container = collector.supplier().get();
+        BiConsumer<A, CompactTicket> accumulator = collector.accumulator();
+        PhaseMetrics.Measurement open = metrics.start();
+        try (JsonParser parser = MAPPER.getFactory().createParser(jsonFile);
+             FileRecords records = new FileRecords(jsonFile.toPath())) {
+            boolean hasTickets = moveToTicketsArray(parser);
+            metrics.stop(Phase.OPEN, open);
+            if (!hasTickets) {
+                return collector.finisher().apply(container);
             }
+            PhaseMetrics.Measurement read = metrics.start();
+            PhaseMetrics.Laps laps = metrics.laps();
+            char[][] origins = routes == null ? null : cities(routes, RouteQuery::getOriginName);
+            char[][] destinations = routes == null ? null : cities(routes, RouteQuery::getDestinationName);
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                // Начало объекта нужно, только пока отклонённые записи идут в выборку или карантин
+                long start = errors.wantsJson() ? parser.getTokenLocation().getByteOffset() : -1;
+                // В памяти держим только текущий объект, а не всё дерево файла
+                JsonNode node = origins == null ? MAPPER.readTree(parser) : readRouteTicket(parser, origins, destinations);
+                event.ticketsSeen++;
+                boolean selected = node != null && selection.test(node);
+                laps.lap(Phase.PARSE);
+                if (!selected) {
+                    continue;
+                }
+                event.ticketsMatched++;
+                int length = start < 0 ? 0 : (int) (parser.getCurrentLocation().getByteOffset() - start);
+                CompactTicket ticket = toTicket(node, records, start, length);
+                laps.lap(Phase.DECODE);
+                // Учёт ошибок общий для анализатора, поэтому отклонённые билеты этого чтения считаем здесь
+                if (ticket == null) {
+                    event.rejects++;
+                } else {
+                    accumulator.accept(container, ticket);
+                    laps.lap(Phase.AGGREGATE);
+                }
+            }
+            R result = collector.finisher().apply(container);
+            laps.lap(Phase.AGGREGATE);
+            metrics.add(laps);
+            metrics.stop(Phase.READ, read);
+            return result;
         }
-        return tickets;
     }
 
-    private LocalDateTime parseDateTime(String dateStr, String timeStr, String timeType) {
+    private <A, R> R readMappedTickets(File jsonFile, List<RouteQuery> routes, Predicate<JsonNode> selection,
+                                       Collector<CompactTicket, A, R> collector,
+                                       FileIngestionEvent event) throws IOException {
+        PhaseMetrics.Measurement open = metrics.start();
+        MappedTicketFile mappedFile = new MappedTicketFile(jsonFile.toPath());
+        long arrayStart;
+        try (JsonParser parser = MAPPER.getFactory().createParser(mappedFile.openStream())) {
+            if (!moveToTicketsArray(parser)) {
+                metrics.stop(Phase.OPEN, open);
+                return collector.finisher().apply(collector.supplier().get());
+            }
+            arrayStart = parser.getTokenLocation().getByteOffset();
+        }
+        metrics.stop(Phase.OPEN, open);
+        MappedTicketReader reader = new MappedTicketReader(MAPPER, ForkJoinPool.commonPool(), metrics);
+        RouteFilter filter = routes == null ? new RouteFilter(null, null) : new RouteFilter(routes);
+        LongAdder matched = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        MappedTicketReader.TicketConverter converter = (start, length, node) -> {
+            if (!selection.test(node)) {
+                return null;
+            }
+            matched.increment();
+            CompactTicket ticket = toTicket(node, mappedFile::text, start, length);
+            if (ticket == null) {
+                rejected.increment();
+            }
+            return ticket;
+        };
         try {
-            LocalDate date = LocalDate.parse(dateStr, DATE_FORMATTER);
-            LocalTime time = LocalTime.parse(timeStr, TIME_FORMATTER);
-            return LocalDateTime.of(date, time);
-        } catch (DateTimeParseException e) {
-            throw new DateTimeParseException(
-                    "Ошибка парсинга " + timeType + " (дата: " + dateStr + ", время: " + timeStr + ")",
-                    e.getParsedString(), e.getErrorIndex(), e
-            );
+            return readMappedArray(jsonFile, routes, mappedFile, arrayStart, reader, filter, converter, collector);
+        } finally {
+            event.ticketsSeen = reader.seen();
+            event.ticketsMatched = matched.sum();
+            event.rejects = rejected.sum();
         }
     }
 
-    private boolean isSearchFly(String departurePoint, String arrivePoint, JsonNode node) {
-        return node.path("origin_name").asText().equals(departurePoint)
-                && node.path("destination_name").asText().equals(arrivePoint);
+    private <A, R> R readMappedArray(File jsonFile, List<RouteQuery> routes, MappedTicketFile mappedFile,
+                                     long arrayStart, MappedTicketReader reader, RouteFilter filter,
+                                     MappedTicketReader.TicketConverter converter,
+                                     Collector<CompactTicket, A, R> collector) throws IOException {
+        if (ingestionMode == IngestionMode.INDEXED && routes != null) {
+            PhaseMetrics.Measurement index = metrics.start();
+            RouteIndex.LocationList locations = routeIndex(jsonFile.toPath(), mappedFile, arrayStart, reader)
+                    .locations(routes);
+            metrics.stop(Phase.INDEX, index);
+            PhaseMetrics.Measurement read = metrics.start();
+            R result = reader.readAt(mappedFile, locations.starts, locations.lengths, locations.size, converter, collector);
+            metrics.stop(Phase.READ, read);
+            return result;
+        }
+        PhaseMetrics.Measurement read = metrics.start();
+        if (ingestionMode == IngestionMode.PARALLEL) {
+            R result = reader.readParallel(mappedFile, arrayStart, filter, converter, collector);
+            metrics.addWallTime(Phase.READ, read);
+            return result;
+        }
+        R result = reader.read(mappedFile, arrayStart, filter, converter, collector);
+        metrics.stop(Phase.READ, read);
+        return result;
     }
 
-    private Map<String, Long> calculateMinFlightTimes(List<Ticket> tickets) {
-        Map<String, Long> minFlightTimes = new HashMap<>();
+    // Индекс строится при первом обращении и перестраивается, если файл данных изменился.
+    // Проверка и сборка идут под блокировкой файла: параллельные анализы одного файла строят индекс один раз
+    private RouteIndex routeIndex(Path dataPath, MappedTicketFile mappedFile, long arrayStart,
+                                  MappedTicketReader reader) throws IOException {
+        Path key = dataPath.toAbsolutePath().normalize();
+        synchronized (routeIndexLocks.computeIfAbsent(key, path -> new Object())) {
+            RouteIndex index = routeIndexes.get(key);
+            if (index != null && index.isCurrent(dataPath)) {
+                return index;
+            }
+            index = RouteIndex.open(dataPath);
+            if (index == null) {
+                index = RouteIndex.build(dataPath, mappedFile, arrayStart, reader, errors);
+            }
+            routeIndexes.put(key, index);
+            return index;
+        }
+    }
 
-        for (Ticket ticket : tickets) {
-            try {
-                LocalDateTime departure = ticket.getDepartureDateTime();
-                LocalDateTime arrival = ticket.getArrivalDateTime();
-                Duration duration = Duration.between(departure, arrival);
-                if (duration.isNegative()) {
-                    duration = duration.plusDays(1);
+    /**
+     * Объект-билет, который читается по полям: как только origin_name или destination_name - строка
+     * не из запрошенных городов, остаток объекта пропускается через {@link JsonParser#skipChildren()}
+     * без построения узлов, и возвращается null. Город сравнивается по символам из буфера парсера,
+     * String для него не создаётся. Как и у {@link RouteFilter}, точное совпадение пары
+     * и значения других типов проверяются по дереву.
+     */
+    private static JsonNode readRouteTicket(JsonParser parser, char[][] origins, char[][] destinations)
+            throws IOException {
+        ObjectNode node = MAPPER.createObjectNode();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_STRING && (("origin_name".equals(field) && !isOneOf(parser, origins))
+                    || ("destination_name".equals(field) && !isOneOf(parser, destinations)))) {
+                while (parser.nextToken() != JsonToken.END_OBJECT) {
+                    parser.skipChildren();
                 }
-                long durationInMinutes = duration.toMinutes();
-                minFlightTimes.compute(ticket.getCarrier(), (carrier, currentMin) ->
-                        currentMin == null ? durationInMinutes : Math.min(currentMin, durationInMinutes));
-            } catch (Exception e) {
-                System.err.println("Ошибка расчета времени для рейса: " + ticket.getCarrier());
-                e.printStackTrace();
+                return null;
             }
+            node.set(field, MAPPER.readTree(parser));
         }
+        return node;
+    }
 
-        return minFlightTimes;
+    private static char[][] cities(List<RouteQuery> routes, Function<RouteQuery, String> city) {
+        return routes.stream().map(city).distinct().map(String::toCharArray).toArray(char[][]::new);
     }
 
-    private void printMinFlightTimes(Map<String, Long> minFlightTimes) {
-        System.out.println("Минимальное время полета для каждого перевозчика:");
-        if (minFlightTimes.isEmpty()) {
-            System.out.println("Нет данных о времени полета.");
-        } else {
-            minFlightTimes.forEach((carrier, duration) ->
-                    System.out.printf("%s: %d часов %d минут%n",
-                            carrier, duration / 60, duration % 60));
+    // Текущая строка парсера: символы лежат в его буфере, пока не запрошен следующий токен
+    private static boolean isOneOf(JsonParser parser, char[][] cities) throws IOException {
+        char[] text = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        for (char[] city : cities) {
+            if (Arrays.equals(text, offset, offset + length, city, 0, city.length)) {
+                return true;
+            }
         }
+        return false;
     }
 
-    private List<BigDecimal> extractPrices(List<Ticket> tickets) {
-        return tickets.stream()
-                .map(Ticket::getPrice)
-                .sorted()
-                .toList();
+    private boolean moveToTicketsArray(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("tickets".equals(field) && value == JsonToken.START_ARRAY) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
     }
 
-    private void printPriceStatistics(List<BigDecimal> prices) {
-        if (prices.isEmpty()) {
-            System.out.println("\nЦены не доступны в данных.");
-            return;
+    /**
+     * @param start  начало объекта в файле; -1, если исходный текст записи не нужен
+     * @param length длина объекта в байтах
+     * @return билет; null, только если запись отклонена и учтена в {@link #errors}
+     */
+    private CompactTicket toTicket(JsonNode node, RawRecords records, long start, int length) {
+        try {
+            long departureEpochMinute = parseDateTime(
+                    node.path("departure_date").asText(),
+                    node.path("departure_time").asText(),
+                    "отправления"
+            );
+            long arrivalEpochMinute = parseDateTime(
+                    node.path("arrival_date").asText(),
+                    node.path("arrival_time").asText(),
+                    "прибытия"
+            );
+
+            String priceText = node.path("price").asText("0");
+            long price = FixedPointPrices.parseKopecks(priceText);
+            if (isNegativePrice(priceText, price)) {
+                reject(ErrorKind.NEGATIVE_PRICE, node, records, start, length,
+                        "Цена не может быть отрицательной: " + new BigDecimal(priceText));
+                return null;
+            }
+
+            return new CompactTicket(
+                    dictionary.carrierIdOf(node.path("carrier").asText()),
+                    dictionary.idOf(node.path("origin").asText()),
+                    dictionary.idOf(node.path("origin_name").asText()),
+                    dictionary.idOf(node.path("destination").asText()),
+                    dictionary.idOf(node.path("destination_name").asText()),
+                    departureEpochMinute,
+                    arrivalEpochMinute,
+                    price,
+                    toStops(node.path("stops").asInt()),
+                    FixedPointPrices.subKopeckPrice(priceText)
+            );
+        } catch (DateTimeParseException e) {
+            reject(EpochMinuteDecoder.errorKind(e), node, records, start, length, e.getMessage());
+        } catch (NumberFormatException e) {
+            reject(ErrorKind.PRICE_FORMAT, node, records, start, length, "Ошибка парсинга цены: " + e.getMessage());
         }
+        return null;
+    }
 
-        BigDecimal sum = prices.stream()
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        BigDecimal averagePrice = sum.divide(BigDecimal.valueOf(prices.size()), 0, RoundingMode.HALF_UP);
+    // Число пересадок вне диапазона byte прижимается к его границе, а не переполняется
+    private static byte toStops(int stops) {
+        return (byte) Math.max(Byte.MIN_VALUE, Math.min(stops, Byte.MAX_VALUE));
+    }
 
-        BigDecimal medianPrice;
-        int size = prices.size();
-        if (size % 2 == 0) {
-            BigDecimal lower = prices.get(size / 2 - 1);
-            BigDecimal upper = prices.get(size / 2);
-            medianPrice = lower.add(upper).divide(BigDecimal.valueOf(2), 0, RoundingMode.HALF_UP);
-        } else {
-            medianPrice = prices.get(size / 2);
+    private boolean isNegativePrice(String text, long priceKopecks) {
+        if (priceKopecks < 0) {
+            return true;
         }
+        // Отрицательная цена меньше копейки округляется до нуля, поэтому знак проверяем по точному значению
+        return priceKopecks == 0 && text.startsWith("-") && new BigDecimal(text).signum() < 0;
+    }
 
-        BigDecimal priceDifference = averagePrice.subtract(medianPrice).abs();
+    private void reject(ErrorKind kind, JsonNode node, RawRecords records, long start, int length, String message) {
+        String carrier = node.path("carrier").asText();
+        errors.reject(kind, carrier, message, errors.wantsJson() ? rawRecord(node, records, start, length) : null);
+        ParseFailureEvent.emit(kind, carrier, message);
+    }
 
-        System.out.printf("\nСредняя цена: %s руб.%n", formatBigDecimal(averagePrice));
-        System.out.printf("Медиана цены: %s руб.%n", formatBigDecimal(medianPrice));
-        System.out.printf("Разница между средней ценой и медианой: %s руб.%n", formatBigDecimal(priceDifference));
+    // Запись как в файле, а не сериализованное заново дерево: в карантин попадают исходные байты
+    private String rawRecord(JsonNode node, RawRecords records, long start, int length) {
+        if (start < 0) {
+            return node.toString();
+        }
+        try {
+            return records.text(start, length);
+        } catch (IOException e) {
+            // Файл не удалось перечитать: запись восстанавливается из дерева
+            return node.toString();
+        }
+    }
+
+    private long parseDateTime(String dateStr, String timeStr, String timeType) {
+        return EpochMinuteDecoder.decode(dateStr, timeStr, timeType);
+    }
+
+    // Маршрут null означает все маршруты файла
+    private Predicate<JsonNode> routeSelection(List<RouteQuery> routes) {
+        if (routes == null) {
+            return node -> true;
+        }
+        if (routes.size() == 1) {
+            RouteQuery route = routes.get(0);
+            return node -> isSearchFly(route.getOriginName(), route.getDestinationName(), node);
+        }
+        Set<RouteQuery> routeSet = new HashSet<>(routes);
+        return node -> routeSet.contains(new RouteQuery(
+                node.path("origin_name").asText(), node.path("destination_name").asText()));
     }
 
-    private String formatBigDecimal(BigDecimal value) {
-        if (value.scale() <= 0 || value.stripTrailingZeros().scale() <= 0) {
-            return value.setScale(0, RoundingMode.UNNECESSARY).toString();
+    static boolean isSearchFly(String departurePoint, String arrivePoint, JsonNode node) {
+        if (departurePoint == null) {
+            return true;
+        }
+        return node.path("origin_name").asText().equals(departurePoint)
+                && node.path("destination_name").asText().equals(arrivePoint);
+    }
+
+    /**
+     * Исходный текст записи по её байтовому диапазону в файле.
+     */
+    private interface RawRecords {
+        String text(long start, int length) throws IOException;
+    }
+
+    // При чтении потоком байты записи уже прочитаны парсером, поэтому отклонённая запись перечитывается из файла.
+    // Канал открывается при первой такой записи
+    private static final class FileRecords implements RawRecords, Closeable {
+        private final Path path;
+        private FileChannel channel;
+
+        private FileRecords(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public String text(long start, int length) throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    throw new EOFException("Файл " + path + " короче записи");
+                }
+            }
+            return new String(buffer.array(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
         }
-        return value.setScale(2, RoundingMode.HALF_UP).toString();
     }
-}
\ No newline at end of file
+}
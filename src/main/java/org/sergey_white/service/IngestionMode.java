@@ -0,0 +1,8 @@
+package org.sergey_white.service;
+
+public enum IngestionMode {
+    STREAMING,
+    MEMORY_MAPPED,
+    PARALLEL,
+    INDEXED
+}
@@ -0,0 +1,158 @@
+package org.sergey_white.service;
+
+import java.util.Arrays;
+
+/**
+ * Приближённые квантили потока значений (скетч KLL) в ограниченной памяти.
+ * <p>
+ * Значения копятся на уровнях; элемент уровня h представляет 2^h исходных значений.
+ * Переполненный уровень сортируется, и каждый второй элемент (со случайным сдвигом) поднимается выше.
+ * Ёмкость уровней убывает вниз геометрически от k, поэтому память O(k), а ошибка ранга порядка 1/k.
+ * Скетчи, построенные по разным файлам или частям файла, объединяются через {@link #merge} без повторного чтения данных.
+ * Экземпляр не потокобезопасен.
+ */
+public class KllSketch {
+    public static final int DEFAULT_K = 200;
+    private static final int MIN_LEVEL_CAPACITY = 8;
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+    private final int k;
+    private long[][] levels = {new long[MIN_LEVEL_CAPACITY]};
+    private int[] sizes = new int[1];
+    private long count;
+    private int retained;
+    private int totalCapacity;
+    private long randomState = 0x9E3779B97F4A7C15L;
+
+    public KllSketch() {
+        this(DEFAULT_K);
+    }
+
+    public KllSketch(int k) {
+        if (k < MIN_LEVEL_CAPACITY) {
+            throw new IllegalArgumentException("Параметр k скетча должен быть не меньше " + MIN_LEVEL_CAPACITY + ": " + k);
+        }
+        this.k = k;
+        this.totalCapacity = capacity(0);
+    }
+
+    public void update(long value) {
+        append(0, value);
+        count++;
+        compress();
+    }
+
+    public void merge(KllSketch other) {
+        for (int level = 0; level < other.sizes.length; level++) {
+            for (int i = 0; i < other.sizes[level]; i++) {
+                append(level, other.levels[level][i]);
+            }
+        }
+        count += other.count;
+        compress();
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public int retainedItems() {
+        return retained;
+    }
+
+    /**
+     * Приближённый квантиль методом ближайшего ранга, p от 0 до 1.
+     */
+    public long quantile(double p) {
+        if (p < 0 || p > 1) {
+            throw new IllegalArgumentException("Квантиль должен быть в диапазоне 0..1: " + p);
+        }
+        if (count == 0) {
+            throw new IllegalStateException("Скетч пуст");
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * count));
+        int[] positions = new int[sizes.length];
+        for (int level = 0; level < sizes.length; level++) {
+            Arrays.sort(levels[level], 0, sizes[level]);
+        }
+        long cumulativeWeight = 0;
+        while (true) {
+            int minLevel = -1;
+            for (int level = 0; level < sizes.length; level++) {
+                if (positions[level] < sizes[level]
+                        && (minLevel < 0 || levels[level][positions[level]] < levels[minLevel][positions[minLevel]])) {
+                    minLevel = level;
+                }
+            }
+            long value = levels[minLevel][positions[minLevel]++];
+            cumulativeWeight += 1L << minLevel;
+            if (cumulativeWeight >= rank) {
+                return value;
+            }
+        }
+    }
+
+    private int capacity(int level) {
+        int depth = sizes.length - 1 - level;
+        return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    private void compress() {
+        while (retained > totalCapacity) {
+            for (int level = 0; level < sizes.length; level++) {
+                if (sizes[level] >= capacity(level)) {
+                    compact(level);
+                    break;
+                }
+            }
+        }
+    }
+
+    // Чётное число элементов уровня уплотняется вдвое с удвоением веса, нечётный остаток остаётся на месте.
+    // Остатком случайно становится наименьший или наибольший элемент: всегда наименьший задерживал бы
+    // на нижних уровнях левый хвост распределения, а правый поднимал бы выше
+    private void compact(int level) {
+        long[] items = levels[level];
+        int size = sizes[level];
+        Arrays.sort(items, 0, size);
+        int leftover = size % 2;
+        boolean keepLargest = leftover == 1 && nextBit() == 1;
+        int from = leftover == 1 && !keepLargest ? 1 : 0;
+        int to = from + size - leftover;
+        for (int i = from + nextBit(); i < to; i += 2) {
+            append(level + 1, items[i]);
+        }
+        if (keepLargest) {
+            items[0] = items[size - 1];
+        }
+        retained -= size - leftover;
+        sizes[level] = leftover;
+    }
+
+    private void append(int level, long value) {
+        while (level >= sizes.length) {
+            levels = Arrays.copyOf(levels, sizes.length + 1);
+            levels[sizes.length] = new long[MIN_LEVEL_CAPACITY];
+            sizes = Arrays.copyOf(sizes, sizes.length + 1);
+            totalCapacity = 0;
+            for (int i = 0; i < sizes.length; i++) {
+                totalCapacity += capacity(i);
+            }
+        }
+        long[] items = levels[level];
+        if (sizes[level] == items.length) {
+            items = Arrays.copyOf(items, items.length * 2);
+            levels[level] = items;
+        }
+        items[sizes[level]++] = value;
+        retained++;
+    }
+
+    // xorshift: детерминированный выбор сдвига, чтобы результаты воспроизводились
+    private int nextBit() {
+        randomState ^= randomState << 13;
+        randomState ^= randomState >>> 7;
+        randomState ^= randomState << 17;
+        return (int) (randomState >>> 63);
+    }
+}
@@ -0,0 +1,98 @@
+package org.sergey_white.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Файл с билетами, отображённый в память сегментами по 1 ГБ.
+ * Чтение идёт напрямую из страничного кэша, без read() в промежуточные буферы.
+ * Отображение не зависит от канала, поэтому канал закрывается сразу после map().
+ */
+class MappedTicketFile {
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final MappedByteBuffer[] segments;
+    private final long size;
+
+    MappedTicketFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+            int count = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+            segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long offset = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_SIZE, size - offset));
+            }
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    byte get(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK));
+    }
+
+    /**
+     * Байты файла как текст UTF-8, например исходная запись отклонённого билета.
+     */
+    String text(long position, int length) {
+        byte[] bytes = new byte[length];
+        copy(position, bytes, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    void copy(long position, byte[] target, int length) {
+        int copied = 0;
+        while (copied < length) {
+            MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+            int segmentOffset = (int) (position & SEGMENT_MASK);
+            int count = Math.min(length - copied, segment.limit() - segmentOffset);
+            segment.get(segmentOffset, target, copied, count);
+            copied += count;
+            position += count;
+        }
+    }
+
+    InputStream openStream() {
+        return new SegmentInputStream();
+    }
+
+    private class SegmentInputStream extends InputStream {
+        private long position;
+
+        @Override
+        public int read() {
+            return position < size ? get(position++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= size) {
+                return -1;
+            }
+            MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+            int segmentOffset = (int) (position & SEGMENT_MASK);
+            int count = Math.min(length, segment.limit() - segmentOffset);
+            segment.get(segmentOffset, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, size - position);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package org.sergey_white.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.sergey_white.entity.CompactTicket;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
+
+/**
+ * Разбор массива tickets из отображённого в память файла: последовательно, параллельно или по известным смещениям объектов.
+ * Перед разбором объект проверяется {@link RouteFilter} прямо по байтам, чужие маршруты Jackson не видит.
+ * <p>
+ * При параллельном разборе массив режется на байтовые диапазоны. Состояние лексера (внутри строки или нет, глубина вложенности)
+ * на границе диапазона заранее неизвестно, поэтому разбор идёт в три прохода:
+ * параллельно считаем переход состояния для каждого диапазона при обоих вариантах входа в строку,
+ * последовательно сшиваем состояния на границах, затем параллельно выделяем объекты-билеты,
+ * начинающиеся в своём диапазоне, и разбираем их.
+ */
+class MappedTicketReader {
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+
+    private final ObjectMapper mapper;
+    private final ForkJoinPool pool;
+    private final PhaseMetrics metrics;
+    private final long minChunkSize;
+    private final LongAdder seen = new LongAdder();
+
+    MappedTicketReader(ObjectMapper mapper, ForkJoinPool pool, PhaseMetrics metrics) {
+        this(mapper, pool, metrics, MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * @param minChunkSize минимальный размер диапазона параллельного разбора в байтах
+     */
+    MappedTicketReader(ObjectMapper mapper, ForkJoinPool pool, PhaseMetrics metrics, long minChunkSize) {
+        this.mapper = mapper;
+        this.pool = pool;
+        this.metrics = metrics;
+        this.minChunkSize = minChunkSize;
+    }
+
+    /**
+     * Число объектов-билетов, просмотренных этим читателем.
+     */
+    long seen() {
+        return seen.sum();
+    }
+
+    <A, R> R read(MappedTicketFile file, long arrayStart, RouteFilter filter,
+                  TicketConverter converter, Collector<CompactTicket, A, R> collector) throws IOException {
+        try {
+            A container = collector.supplier().get();
+            readChunk(file, arrayStart + 1, file.size(), false, 0, filter, converter, collector, container);
+            return collector.finisher().apply(container);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    <A, R> R readParallel(MappedTicketFile file, long arrayStart, RouteFilter filter,
+                          TicketConverter converter, Collector<CompactTicket, A, R> collector) throws IOException {
+        try {
+            return readChunks(file, arrayStart, filter, converter, collector);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private <A, R> R readChunks(MappedTicketFile file, long arrayStart, RouteFilter filter,
+                                TicketConverter converter, Collector<CompactTicket, A, R> collector) {
+        long[] bounds = splitIntoChunks(file, arrayStart + 1);
+        int chunks = bounds.length - 1;
+
+        ChunkTransition[] transitions = pool.submit(() -> IntStream.range(0, chunks).parallel()
+                .mapToObj(i -> {
+                    PhaseMetrics.Measurement measurement = metrics.start();
+                    ChunkTransition transition = ChunkTransition.of(file, bounds[i], bounds[i + 1]);
+                    metrics.addThreadUsage(Phase.READ, measurement);
+                    return transition;
+                })
+                .toArray(ChunkTransition[]::new)).join();
+
+        boolean[] entryInString = new boolean[chunks];
+        long[] entryDepth = new long[chunks];
+        boolean inString = false;
+        long depth = 0;
+        for (int i = 0; i < chunks; i++) {
+            entryInString[i] = inString;
+            entryDepth[i] = depth;
+            if (depth < 0) {
+                continue;
+            }
+            ChunkTransition.State exit = inString ? transitions[i].fromString : transitions[i].fromValue;
+            // Массив закрылся внутри диапазона: дальше билетов нет
+            depth = depth + exit.minDepth < 0 ? -1 : depth + exit.depth;
+            inString = exit.inString;
+        }
+
+        // Части объединяются в порядке файла, как при последовательном чтении; готовая часть
+        // присоединяется, как только готовы все части перед ней, и сразу освобождается
+        AtomicReference<A> result = new AtomicReference<>(collector.supplier().get());
+        pool.submit(() -> IntStream.range(0, chunks).parallel()
+                .mapToObj(i -> {
+                    PhaseMetrics.Measurement measurement = metrics.start();
+                    A part = readChunk(file, bounds[i], bounds[i + 1], entryInString[i], entryDepth[i],
+                            filter, converter, collector, collector.supplier().get());
+                    metrics.addThreadUsage(Phase.READ, measurement);
+                    return part;
+                })
+                .forEachOrdered(part -> result.set(collector.combiner().apply(result.get(), part)))).join();
+        return collector.finisher().apply(result.get());
+    }
+
+    private long[] splitIntoChunks(MappedTicketFile file, long start) {
+        long length = Math.max(0, file.size() - start);
+        long chunkSize = Math.max(minChunkSize, length / (pool.getParallelism() * 4L) + 1);
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+        long position = start + chunkSize;
+        while (position < file.size()) {
+            // Граница не должна попадать сразу за '\', иначе потеряется экранирование
+            while (position < file.size() && file.get(position - 1) == '\\') {
+                position++;
+            }
+            if (position < file.size()) {
+                bounds.add(position);
+            }
+            position += chunkSize;
+        }
+        bounds.add(Math.max(start, file.size()));
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private <A> A readChunk(MappedTicketFile file, long start, long end, boolean inString, long depth,
+                            RouteFilter filter, TicketConverter converter,
+                            Collector<CompactTicket, A, ?> collector, A container) {
+        BiConsumer<A, CompactTicket> accumulator = collector.accumulator();
+        ObjectParser parser = new ObjectParser(file);
+        PhaseMetrics.Laps laps = metrics.laps();
+        long[] objects = new long[1];
+        scanChunk(file, start, end, inString, depth, (objectStart, objectEnd) -> {
+            objects[0]++;
+            if (filter.matches(file, objectStart, objectEnd)) {
+                int length = (int) (objectEnd - objectStart + 1);
+                JsonNode node = parser.parse(objectStart, length);
+                laps.lap(Phase.PARSE);
+                accept(converter.convert(objectStart, length, node), accumulator, container, laps);
+            }
+        });
+        // Поиск и фильтр объектов после последнего подходящего билета
+        laps.lap(Phase.PARSE);
+        metrics.add(laps);
+        seen.add(objects[0]);
+        return container;
+    }
+
+    void readObjects(MappedTicketFile file, long arrayStart, NodeVisitor visitor) throws IOException {
+        try {
+            ObjectParser parser = new ObjectParser(file);
+            scanChunk(file, arrayStart + 1, file.size(), false, 0, (start, end) -> {
+                int length = (int) (end - start + 1);
+                visitor.visit(start, length, parser.parse(start, length));
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    <A, R> R readAt(MappedTicketFile file, long[] starts, int[] lengths, int count,
+                    TicketConverter converter, Collector<CompactTicket, A, R> collector) throws IOException {
+        try {
+            A container = collector.supplier().get();
+            BiConsumer<A, CompactTicket> accumulator = collector.accumulator();
+            ObjectParser parser = new ObjectParser(file);
+            PhaseMetrics.Laps laps = metrics.laps();
+            seen.add(count);
+            for (int i = 0; i < count; i++) {
+                JsonNode node = parser.parse(starts[i], lengths[i]);
+                laps.lap(Phase.PARSE);
+                accept(converter.convert(starts[i], lengths[i], node), accumulator, container, laps);
+            }
+            R result = collector.finisher().apply(container);
+            laps.lap(Phase.AGGREGATE);
+            metrics.add(laps);
+            return result;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Преобразование в билет - разбор дат и цен, добавление в контейнер - агрегация
+    private static <A> void accept(CompactTicket ticket, BiConsumer<A, CompactTicket> accumulator, A container,
+                                   PhaseMetrics.Laps laps) {
+        laps.lap(Phase.DECODE);
+        if (ticket != null) {
+            accumulator.accept(container, ticket);
+            laps.lap(Phase.AGGREGATE);
+        }
+    }
+
+    // Находит объекты верхнего уровня массива, начинающиеся в [start, end); последний может заканчиваться за end
+    private void scanChunk(MappedTicketFile file, long start, long end, boolean inString, long depth,
+                           ObjectVisitor visitor) {
+        if (depth < 0) {
+            return;
+        }
+        boolean escaped = false;
+        long objectStart = -1;
+        long size = file.size();
+        for (long position = start; position < size; position++) {
+            if (position >= end && objectStart < 0) {
+                break;
+            }
+            byte b = file.get(position);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                if (depth == 0 && b == '{') {
+                    objectStart = position;
+                }
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+                if (depth < 0) {
+                    break;
+                }
+                if (depth == 0 && objectStart >= 0) {
+                    visitor.visit(objectStart, position);
+                    objectStart = -1;
+                }
+            }
+        }
+    }
+
+    private interface ObjectVisitor {
+        void visit(long start, long end);
+    }
+
+    interface NodeVisitor {
+        void visit(long start, int length, JsonNode node);
+    }
+
+    /**
+     * Билет из разобранного объекта; null, если объект не подходит или отклонён.
+     * Байтовый диапазон объекта в файле нужен, чтобы отклонённая запись попала в карантин как есть.
+     */
+    interface TicketConverter {
+        CompactTicket convert(long start, int length, JsonNode node);
+    }
+
+    private final class ObjectParser {
+        private final MappedTicketFile file;
+        private byte[] buffer = new byte[1024];
+
+        private ObjectParser(MappedTicketFile file) {
+            this.file = file;
+        }
+
+        JsonNode parse(long start, int length) {
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            file.copy(start, buffer, length);
+            try (JsonParser parser = mapper.getFactory().createParser(buffer, 0, length)) {
+                return mapper.readTree(parser);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static final class ChunkTransition {
+        private final State fromValue;
+        private final State fromString;
+
+        private ChunkTransition(State fromValue, State fromString) {
+            this.fromValue = fromValue;
+            this.fromString = fromString;
+        }
+
+        static ChunkTransition of(MappedTicketFile file, long start, long end) {
+            return new ChunkTransition(scan(file, start, end, false), scan(file, start, end, true));
+        }
+
+        private static State scan(MappedTicketFile file, long start, long end, boolean inString) {
+            boolean escaped = false;
+            long depth = 0;
+            long minDepth = 0;
+            for (long position = start; position < end; position++) {
+                byte b = file.get(position);
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        inString = false;
+                    }
+                } else if (b == '"') {
+                    inString = true;
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                    minDepth = Math.min(minDepth, depth);
+                }
+            }
+            return new State(inString, depth, minDepth);
+        }
+
+        private static final class State {
+            private final boolean inString;
+            private final long depth;
+            private final long minDepth;
+
+            private State(boolean inString, long depth, long minDepth) {
+                this.inString = inString;
+                this.depth = depth;
+                this.minDepth = minDepth;
+            }
+        }
+    }
+}
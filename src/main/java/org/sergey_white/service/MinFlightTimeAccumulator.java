@@ -0,0 +1,67 @@
+package org.sergey_white.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Минимальное время полёта по перевозчикам, с ключом по идентификатору перевозчика из {@link SymbolDictionary}.
+ * Перевозчики запоминаются в порядке первого появления, чтобы итоговая карта совпадала
+ * с построенной напрямую по строкам.
+ */
+class MinFlightTimeAccumulator {
+    private static final long MINUTES_PER_DAY = 24 * 60;
+
+    private long[] minByCarrier;
+    private int[] carriersInOrder;
+    private int carrierCount;
+
+    MinFlightTimeAccumulator(int expectedCarriers) {
+        minByCarrier = new long[Math.max(expectedCarriers, 1)];
+        Arrays.fill(minByCarrier, Long.MAX_VALUE);
+        carriersInOrder = new int[minByCarrier.length];
+    }
+
+    void accept(int carrierId, long departureMinute, long arrivalMinute) {
+        long duration = arrivalMinute - departureMinute;
+        if (duration < 0) {
+            duration += MINUTES_PER_DAY;
+        }
+        acceptDuration(carrierId, duration);
+    }
+
+    void merge(MinFlightTimeAccumulator other) {
+        for (int i = 0; i < other.carrierCount; i++) {
+            int carrierId = other.carriersInOrder[i];
+            acceptDuration(carrierId, other.minByCarrier[carrierId]);
+        }
+    }
+
+    private void acceptDuration(int carrierId, long duration) {
+        if (carrierId >= minByCarrier.length) {
+            grow(carrierId + 1);
+        }
+        if (minByCarrier[carrierId] == Long.MAX_VALUE) {
+            if (carrierCount == carriersInOrder.length) {
+                carriersInOrder = Arrays.copyOf(carriersInOrder, carrierCount * 2);
+            }
+            carriersInOrder[carrierCount++] = carrierId;
+        }
+        minByCarrier[carrierId] = Math.min(minByCarrier[carrierId], duration);
+    }
+
+    Map<String, Long> toMap(SymbolDictionary dictionary) {
+        Map<String, Long> minFlightTimes = new HashMap<>();
+        for (int i = 0; i < carrierCount; i++) {
+            int carrierId = carriersInOrder[i];
+            minFlightTimes.put(dictionary.carrierOf(carrierId), minByCarrier[carrierId]);
+        }
+        return minFlightTimes;
+    }
+
+    private void grow(int capacity) {
+        int oldLength = minByCarrier.length;
+        minByCarrier = Arrays.copyOf(minByCarrier, Math.max(capacity, oldLength * 2));
+        Arrays.fill(minByCarrier, oldLength, minByCarrier.length, Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,113 @@
+package org.sergey_white.service;
+
+/**
+ * Выбор k-й порядковой статистики в массиве цен за ожидаемое O(n) без полной сортировки (introselect).
+ * Обычно работает быстрый выбор с опорным элементом "медиана из трёх"; если разбиения
+ * оказываются плохими, алгоритм переключается на детерминированную "медиану медиан" с гарантией O(n).
+ * Массив переупорядочивается на месте.
+ */
+public final class OrderStatistics {
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private OrderStatistics() {
+    }
+
+    /**
+     * @return k-й по возрастанию элемент среди первых size элементов (k с нуля)
+     */
+    public static long select(long[] values, int size, int k) {
+        if (k < 0 || k >= size) {
+            throw new IllegalArgumentException("Порядковая статистика " + k + " вне диапазона 0.." + (size - 1));
+        }
+        return select(values, 0, size - 1, k);
+    }
+
+    private static long select(long[] values, int left, int right, int k) {
+        int badPartitionsLeft = 2 * (32 - Integer.numberOfLeadingZeros(right - left + 1));
+        while (right - left >= INSERTION_SORT_THRESHOLD) {
+            long pivot = badPartitionsLeft-- > 0
+                    ? medianOfThree(values, left, left + (right - left) / 2, right)
+                    : medianOfMedians(values, left, right);
+            long packed = partition(values, left, right, pivot);
+            int lessEnd = (int) (packed >>> 32);
+            int greaterStart = (int) packed;
+            if (k < lessEnd) {
+                right = lessEnd - 1;
+            } else if (k >= greaterStart) {
+                left = greaterStart;
+            } else {
+                return pivot;
+            }
+        }
+        insertionSort(values, left, right);
+        return values[k];
+    }
+
+    /**
+     * Перцентиль методом ближайшего ранга, p от 0 до 1.
+     */
+    public static long percentile(long[] values, int size, double p) {
+        if (p < 0 || p > 1) {
+            throw new IllegalArgumentException("Перцентиль должен быть в диапазоне 0..1: " + p);
+        }
+        int rank = (int) Math.ceil(p * size);
+        return select(values, size, Math.max(rank, 1) - 1);
+    }
+
+    // Трёхпутевое разбиение: [left, lessEnd) < pivot, [lessEnd, greaterStart) == pivot, [greaterStart, right] > pivot
+    private static long partition(long[] values, int left, int right, long pivot) {
+        int less = left;
+        int index = left;
+        int greater = right;
+        while (index <= greater) {
+            long value = values[index];
+            if (value < pivot) {
+                swap(values, less++, index++);
+            } else if (value > pivot) {
+                swap(values, index, greater--);
+            } else {
+                index++;
+            }
+        }
+        return ((long) less << 32) | (greater + 1);
+    }
+
+    private static long medianOfThree(long[] values, int a, int b, int c) {
+        long x = values[a];
+        long y = values[b];
+        long z = values[c];
+        if (x < y) {
+            return y < z ? y : Math.max(x, z);
+        }
+        return x < z ? x : Math.max(y, z);
+    }
+
+    // Медианы групп по пять собираются в начало диапазона, затем рекурсивно выбирается их медиана
+    private static long medianOfMedians(long[] values, int left, int right) {
+        int medians = left;
+        for (int groupStart = left; groupStart <= right; groupStart += 5) {
+            int groupEnd = Math.min(groupStart + 4, right);
+            insertionSort(values, groupStart, groupEnd);
+            swap(values, medians++, groupStart + (groupEnd - groupStart) / 2);
+        }
+        return select(values, left, medians - 1, left + (medians - left) / 2);
+    }
+
+    private static void insertionSort(long[] values, int left, int right) {
+        for (int i = left + 1; i <= right; i++) {
+            long value = values[i];
+            int j = i - 1;
+            while (j >= left && values[j] > value) {
+                values[j + 1] = values[j];
+                j--;
+            }
+            values[j + 1] = value;
+        }
+    }
+
+    private static void swap(long[] values, int i, int j) {
+        long tmp = values[i];
+        values[i] = values[j];
+        values[j] = tmp;
+    }
+}
@@ -0,0 +1,42 @@
+package org.sergey_white.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Событие JFR на отклонённый билет. Пишется каждое {@link #SAMPLE_RATE}-е отклонение,
+ * чтобы файл с массой ошибок не забивал запись; счётчик выборки идёт, только пока событие включено.
+ */
+@Name("org.sergey_white.ParseFailure")
+@Label("Ошибка разбора билета")
+@Category("Анализ билетов")
+@StackTrace(false)
+final class ParseFailureEvent extends jdk.jfr.Event {
+    static final int SAMPLE_RATE = 100;
+
+    private static final AtomicLong REJECTS = new AtomicLong();
+
+    @Label("Вид ошибки")
+    String kind;
+
+    @Label("Перевозчик")
+    String carrier;
+
+    @Label("Сообщение")
+    String message;
+
+    static void emit(ErrorKind kind, String carrier, String message) {
+        ParseFailureEvent event = new ParseFailureEvent();
+        if (!event.isEnabled() || REJECTS.getAndIncrement() % SAMPLE_RATE != 0) {
+            return;
+        }
+        event.kind = kind.description();
+        event.carrier = carrier;
+        event.message = message;
+        event.commit();
+    }
+}
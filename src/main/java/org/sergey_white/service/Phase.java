@@ -0,0 +1,42 @@
+package org.sergey_white.service;
+
+/**
+ * Этапы анализа, по которым {@link PhaseMetrics} копит время и аллокации.
+ * Разбор дерева, фильтр маршрута, разбор дат и агрегация идут за один проход по файлу, поэтому это один этап READ.
+ * Его доли PARSE, DECODE и AGGREGATE замеряются внутри цикла чтения только по {@link System#nanoTime()}
+ * и складываются по всем потокам чтения; процессорного времени и аллокаций у них нет. Замер долей стоит
+ * отметок на каждый билет, поэтому включается отдельно, см. {@link PhaseMetrics#setSplitRead(boolean)}.
+ */
+public enum Phase {
+    OPEN("открытие файла"),
+    INDEX("индекс маршрутов"),
+    READ("чтение и агрегация"),
+    PARSE("разбор JSON и фильтр маршрута", READ),
+    DECODE("разбор дат и цен", READ),
+    AGGREGATE("агрегация", READ),
+    STATISTICS("статистика"),
+    RENDER("вывод");
+
+    private final String description;
+    private final Phase parent;
+
+    Phase(String description) {
+        this(description, null);
+    }
+
+    Phase(String description, Phase parent) {
+        this.description = description;
+        this.parent = parent;
+    }
+
+    public String description() {
+        return description;
+    }
+
+    /**
+     * Этап, долю которого составляет этот; null для самостоятельного этапа.
+     */
+    public Phase parent() {
+        return parent;
+    }
+}
@@ -0,0 +1,217 @@
+package org.sergey_white.service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Время и аллокации по этапам анализа через {@link ThreadMXBean}: время по часам, процессорное время
+ * и байты, выделенные потоком. Замер стоит несколько вызовов MXBean на этап, а не на билет, поэтому учёт включён всегда.
+ * <p>
+ * Доли этапа READ ({@link Phase#PARSE}, {@link Phase#DECODE}, {@link Phase#AGGREGATE}) можно замерить только
+ * внутри цикла чтения, то есть по {@link System#nanoTime()} на билет. Поэтому они выключены по умолчанию
+ * и включаются {@link #setSplitRead(boolean)} для разбора, на что уходит время чтения.
+ * <p>
+ * При параллельном чтении время по часам берётся у вызывающего потока, а процессорное время и аллокации
+ * складываются по диапазонам из потоков пула. Если JVM не поддерживает замер процессорного времени
+ * или аллокаций потока, соответствующие показатели остаются нулевыми.
+ */
+public class PhaseMetrics {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = THREADS instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported()
+            ? (com.sun.management.ThreadMXBean) THREADS
+            : null;
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+    private final LongAdder[] calls = adders();
+    private final LongAdder[] wallNanos = adders();
+    private final LongAdder[] cpuNanos = adders();
+    private final LongAdder[] allocatedBytes = adders();
+    private volatile boolean splitRead;
+
+    /**
+     * Начало замера в текущем потоке.
+     */
+    public Measurement start() {
+        return new Measurement(System.nanoTime(), cpuTime(), allocated());
+    }
+
+    /**
+     * Конец замера, начатого {@link #start()} в этом же потоке.
+     */
+    public void stop(Phase phase, Measurement measurement) {
+        addWallTime(phase, measurement);
+        addThreadUsage(phase, measurement);
+    }
+
+    // Только время по часам: процессорное время и аллокации этапа посчитаны в потоках пула
+    void addWallTime(Phase phase, Measurement measurement) {
+        calls[phase.ordinal()].increment();
+        wallNanos[phase.ordinal()].add(System.nanoTime() - measurement.wallNanos);
+    }
+
+    // Только процессорное время и аллокации текущего потока, без числа замеров
+    void addThreadUsage(Phase phase, Measurement measurement) {
+        cpuNanos[phase.ordinal()].add(Math.max(0, cpuTime() - measurement.cpuNanos));
+        allocatedBytes[phase.ordinal()].add(Math.max(0, allocated() - measurement.allocatedBytes));
+    }
+
+    public boolean isSplitRead() {
+        return splitRead;
+    }
+
+    /**
+     * Замерять ли доли этапа READ; действует на чтения, начатые после вызова.
+     */
+    public void setSplitRead(boolean splitRead) {
+        this.splitRead = splitRead;
+    }
+
+    /**
+     * Счётчик долей этапа для одного потока чтения; если доли не замеряются, отметки ничего не делают.
+     */
+    Laps laps() {
+        return splitRead ? new Laps() : Laps.OFF;
+    }
+
+    // Итог счётчика долей: одно обращение к сумматорам на поток, а не на билет
+    void add(Laps laps) {
+        if (laps == Laps.OFF) {
+            return;
+        }
+        for (int i = 0; i < laps.nanos.length; i++) {
+            if (laps.calls[i] > 0) {
+                calls[i].add(laps.calls[i]);
+                wallNanos[i].add(laps.nanos[i]);
+            }
+        }
+    }
+
+    public PhaseTiming timing(Phase phase) {
+        int i = phase.ordinal();
+        return new PhaseTiming(phase, calls[i].sum(), wallNanos[i].sum(), cpuNanos[i].sum(), allocatedBytes[i].sum());
+    }
+
+    public Map<Phase, PhaseTiming> snapshot() {
+        Map<Phase, PhaseTiming> snapshot = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values()) {
+            snapshot.put(phase, timing(phase));
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    public void reset() {
+        for (int i = 0; i < calls.length; i++) {
+            calls[i].reset();
+            wallNanos[i].reset();
+            cpuNanos[i].reset();
+            allocatedBytes[i].reset();
+        }
+    }
+
+    /**
+     * Одна строка по этапам, которые выполнялись: время по часам, процессорное время и выделенная память,
+     * после этапа - время его долей. Пустая строка, если замеров не было.
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            PhaseTiming timing = timing(phase);
+            if (timing.getCalls() == 0 || phase.parent() != null) {
+                continue;
+            }
+            summary.append(summary.length() == 0 ? "Этапы: " : "; ")
+                    .append(phase.description()).append(' ').append(millis(timing.getWallNanos()))
+                    .append(" мс (CPU ").append(millis(timing.getCpuNanos()))
+                    .append(" мс, ").append(timing.getAllocatedBytes() / 1024).append(" КБ)");
+            appendParts(summary, phase);
+        }
+        return summary.length() == 0 ? "" : summary.append(System.lineSeparator()).toString();
+    }
+
+    private void appendParts(StringBuilder summary, Phase parent) {
+        boolean first = true;
+        for (Phase phase : Phase.values()) {
+            PhaseTiming timing = timing(phase);
+            if (phase.parent() != parent || timing.getCalls() == 0) {
+                continue;
+            }
+            summary.append(first ? ", из них по потокам: " : ", ")
+                    .append(phase.description()).append(' ').append(millis(timing.getWallNanos())).append(" мс");
+            first = false;
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1f", nanos / 1_000_000.0);
+    }
+
+    private static long cpuTime() {
+        return CPU_TIME ? Math.max(0, THREADS.getCurrentThreadCpuTime()) : 0;
+    }
+
+    private static long allocated() {
+        return ALLOCATIONS != null ? Math.max(0, ALLOCATIONS.getCurrentThreadAllocatedBytes()) : 0;
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[Phase.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Доли этапа чтения в одном потоке: время от предыдущей отметки относится к этапу, названному в {@link #lap}.
+     * Стоит одного {@link System#nanoTime()} на отметку, в выключенном счётчике {@link #OFF} - одной проверки;
+     * переносится в {@link PhaseMetrics} через {@link #add(Laps)}.
+     */
+    static final class Laps {
+        // Общий для всех потоков: ничего не меняет, поэтому безопасен без синхронизации
+        static final Laps OFF = new Laps(false);
+
+        private final boolean enabled;
+        private final long[] calls = new long[Phase.values().length];
+        private final long[] nanos = new long[Phase.values().length];
+        private long mark;
+
+        private Laps() {
+            this(true);
+        }
+
+        private Laps(boolean enabled) {
+            this.enabled = enabled;
+            this.mark = enabled ? System.nanoTime() : 0;
+        }
+
+        void lap(Phase phase) {
+            if (!enabled) {
+                return;
+            }
+            long now = System.nanoTime();
+            calls[phase.ordinal()]++;
+            nanos[phase.ordinal()] += now - mark;
+            mark = now;
+        }
+    }
+
+    /**
+     * Показания потока на начало замера.
+     */
+    public static final class Measurement {
+        private final long wallNanos;
+        private final long cpuNanos;
+        private final long allocatedBytes;
+
+        private Measurement(long wallNanos, long cpuNanos, long allocatedBytes) {
+            this.wallNanos = wallNanos;
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.sergey_white.service;
+
+import lombok.Value;
+
+/**
+ * Накопленные показатели одного этапа: число замеров, время по часам, процессорное время всех потоков этапа и выделенная ими память.
+ */
+@Value
+public class PhaseTiming {
+    Phase phase;
+    long calls;
+    long wallNanos;
+    long cpuNanos;
+    long allocatedBytes;
+}
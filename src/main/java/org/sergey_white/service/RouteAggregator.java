@@ -0,0 +1,284 @@
+package org.sergey_white.service;
+
+import org.sergey_white.entity.AnalysisResult;
+import org.sergey_white.entity.CompactTicket;
+import org.sergey_white.entity.RouteStatistics;
+import org.sergey_white.storage.TicketTable;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collector;
+
+/**
+ * Все показатели маршрута за один проход: минимальное время полёта по перевозчикам,
+ * количество билетов, сумма цен и массив цен для медианы и перцентилей. Цены хранятся в копейках;
+ * сумма считается в long и только при переполнении продолжается в BigDecimal.
+ * Если в маршруте встречается цена с долями копейки, рядом с массивом копеек ведётся массив точных цен,
+ * и медиана, средняя цена и разница считаются по ним так же, как прежде через BigDecimal.
+ * По запросу вместо массива цен ведётся {@link KllSketch}: память на маршрут не растёт с числом билетов,
+ * а перцентили цены становятся приближёнными. Медиана в этом режиме тоже берётся из скетча
+ * и помечается в {@link RouteStatistics#isMedianApproximate()}, если только цены не переданы массивом
+ * через {@link #acceptPrices}: тогда она по-прежнему выбирается точно.
+ * Агрегаты частей файла объединяются через {@link #merge}, поэтому собирать их можно прямо при чтении.
+ */
+class RouteAggregator {
+    private static final int[] REPORTED_PERCENTILES = {50, 90, 99};
+
+    private final MinFlightTimeAccumulator minFlightTimes;
+    // null, если цены идут только в скетч
+    private long[] prices;
+    private int count;
+    private long priceSum;
+    private BigDecimal overflowedSum;
+    // Точные цены в рублях: null, пока в маршруте нет цен с долями копейки
+    private BigDecimal[] exactPrices;
+    // Сумма разниц между точными ценами и их округлением до копеек
+    private BigDecimal subKopeckCorrection;
+    private final KllSketch priceSketch;
+
+    RouteAggregator(int expectedCarriers, boolean withPriceSketch) {
+        minFlightTimes = new MinFlightTimeAccumulator(expectedCarriers);
+        priceSketch = withPriceSketch ? new KllSketch() : null;
+        prices = withPriceSketch ? null : new long[16];
+    }
+
+    static Collector<CompactTicket, RouteAggregator, RouteAggregator> collector(int expectedCarriers,
+                                                                               boolean withPriceSketch) {
+        return Collector.of(() -> new RouteAggregator(expectedCarriers, withPriceSketch),
+                RouteAggregator::accept, RouteAggregator::merge);
+    }
+
+    // Группировка по маршрутам (город отправления, город прибытия) для анализа всех маршрутов сразу
+    static Collector<CompactTicket, Map<Long, RouteAggregator>, Map<Long, RouteAggregator>> byRouteCollector(
+            int expectedCarriers, boolean withPriceSketch) {
+        return Collector.of(
+                LinkedHashMap::new,
+                (routes, ticket) -> routes.computeIfAbsent(
+                        TicketTable.routeKey(ticket.getOriginNameId(), ticket.getDestinationNameId()),
+                        key -> new RouteAggregator(expectedCarriers, withPriceSketch)).accept(ticket),
+                (left, right) -> {
+                    right.forEach((key, aggregator) -> left.merge(key, aggregator, RouteAggregator::merge));
+                    return left;
+                });
+    }
+
+    void accept(CompactTicket ticket) {
+        accept(ticket.getCarrierId(), ticket.getDepartureEpochMinute(), ticket.getArrivalEpochMinute(),
+                ticket.getPriceKopecks(), ticket.getExactPrice());
+    }
+
+    void accept(int carrierId, long departureMinute, long arrivalMinute, long priceKopecks) {
+        accept(carrierId, departureMinute, arrivalMinute, priceKopecks, null);
+    }
+
+    /**
+     * @param exactPrice точная цена в рублях, если она не выражается целым числом копеек; иначе null
+     */
+    void accept(int carrierId, long departureMinute, long arrivalMinute, long priceKopecks, BigDecimal exactPrice) {
+        minFlightTimes.accept(carrierId, departureMinute, arrivalMinute);
+        if (priceSketch != null) {
+            priceSketch.update(priceKopecks);
+        } else {
+            if (count == prices.length) {
+                prices = Arrays.copyOf(prices, count * 2);
+            }
+            prices[count] = priceKopecks;
+            if (exactPrice != null && exactPrices == null) {
+                exactPrices = exactPrices();
+            }
+            if (exactPrices != null) {
+                if (count == exactPrices.length) {
+                    exactPrices = Arrays.copyOf(exactPrices, count * 2);
+                }
+                exactPrices[count] = exactPrice != null ? exactPrice : FixedPointPrices.toBigDecimal(priceKopecks);
+            }
+        }
+        count++;
+        addToSum(priceKopecks);
+        if (exactPrice != null) {
+            addToCorrection(exactPrice.subtract(FixedPointPrices.toBigDecimal(priceKopecks)));
+        }
+    }
+
+    /**
+     * Время полёта одного билета, цена которого передана в {@link #acceptPrices}.
+     */
+    void acceptFlightTime(int carrierId, long departureMinute, long arrivalMinute) {
+        minFlightTimes.accept(carrierId, departureMinute, arrivalMinute);
+    }
+
+    /**
+     * Цены всех билетов маршрута в копейках, целыми копейками, разом. Массив переходит агрегатору
+     * и сам служит буфером для выбора медианы: цены не копируются в него по одной.
+     * Со скетчем массив тоже остаётся у агрегатора, и медиана выбирается по нему точно: памяти это не добавляет,
+     * массив уже выделен вызывающим. Вызывается один раз, пока в агрегаторе нет цен.
+     */
+    void acceptPrices(long[] pricesKopecks, int size) {
+        if (count != 0) {
+            throw new IllegalStateException("Цены маршрута уже добавлены");
+        }
+        prices = pricesKopecks;
+        count = size;
+        for (int i = 0; i < size; i++) {
+            addToSum(pricesKopecks[i]);
+            if (priceSketch != null) {
+                priceSketch.update(pricesKopecks[i]);
+            }
+        }
+    }
+
+    RouteAggregator merge(RouteAggregator other) {
+        minFlightTimes.merge(other.minFlightTimes);
+        if (priceSketch != null) {
+            priceSketch.merge(other.priceSketch);
+            // Массив одной из частей не покрывает цены объединения: медиана берётся из скетча
+            prices = null;
+        } else {
+            if (prices.length < count + other.count) {
+                prices = Arrays.copyOf(prices, Math.max(count + other.count, prices.length * 2));
+            }
+            System.arraycopy(other.prices, 0, prices, count, other.count);
+            if (exactPrices != null || other.exactPrices != null) {
+                BigDecimal[] merged = Arrays.copyOf(exactPrices(), count + other.count);
+                System.arraycopy(other.exactPrices(), 0, merged, count, other.count);
+                exactPrices = merged;
+            }
+        }
+        count += other.count;
+        addToSum(other.priceSum);
+        if (other.subKopeckCorrection != null) {
+            addToCorrection(other.subKopeckCorrection);
+        }
+        if (other.overflowedSum != null) {
+            overflowedSum = priceSumUnscaled().add(other.overflowedSum);
+            priceSum = 0;
+        }
+        return this;
+    }
+
+    int count() {
+        return count;
+    }
+
+    Map<String, Long> minFlightTimes(SymbolDictionary dictionary) {
+        return minFlightTimes.toMap(dictionary);
+    }
+
+    RouteStatistics toStatistics(String originName, String destinationName, SymbolDictionary dictionary) {
+        long averagePrice = averagePrice();
+        if (exactPrices == null) {
+            long medianPrice = medianPrice();
+            return new RouteStatistics(originName, destinationName, count, minFlightTimes(dictionary),
+                    averagePrice, medianPrice, Math.abs(averagePrice - medianPrice), null, null, prices == null);
+        }
+        BigDecimal medianPrice = exactMedianPrice();
+        BigDecimal difference = FixedPointPrices.toBigDecimal(averagePrice).subtract(medianPrice).abs();
+        return new RouteStatistics(originName, destinationName, count, minFlightTimes(dictionary),
+                averagePrice, FixedPointPrices.toKopecks(medianPrice), FixedPointPrices.toKopecks(difference),
+                FixedPointPrices.isWholeKopecks(medianPrice) ? null : medianPrice,
+                FixedPointPrices.isWholeKopecks(difference) ? null : difference, false);
+    }
+
+    AnalysisResult toResult(String originName, String destinationName, SymbolDictionary dictionary) {
+        AggregationEvent event = new AggregationEvent();
+        event.begin();
+        AnalysisResult result = buildResult(originName, destinationName, dictionary);
+        event.end();
+        if (event.shouldCommit()) {
+            event.origin = originName;
+            event.destination = destinationName;
+            event.tickets = count;
+            event.carriers = result.getStatistics().getMinFlightTimes().size();
+            event.commit();
+        }
+        return result;
+    }
+
+    private AnalysisResult buildResult(String originName, String destinationName, SymbolDictionary dictionary) {
+        if (count == 0) {
+            return new AnalysisResult(RouteStatistics.empty(originName, destinationName), Collections.emptyMap());
+        }
+        Map<Integer, Long> percentiles = new LinkedHashMap<>();
+        if (priceSketch != null) {
+            for (int percentile : REPORTED_PERCENTILES) {
+                percentiles.put(percentile, priceSketch.quantile(percentile / 100.0));
+            }
+        }
+        return new AnalysisResult(toStatistics(originName, destinationName, dictionary), percentiles);
+    }
+
+    long averagePrice() {
+        if (overflowedSum == null && subKopeckCorrection == null) {
+            return FixedPointPrices.averageRubles(priceSum, count);
+        }
+        BigDecimal sum = priceSumUnscaled();
+        if (subKopeckCorrection != null) {
+            sum = sum.add(subKopeckCorrection.movePointRight(2));
+        }
+        return sum.divide(BigDecimal.valueOf(count * 100L), 0, RoundingMode.HALF_UP)
+                .longValueExact() * 100;
+    }
+
+    // Медиана по точным ценам: серединная цена как есть, среднее двух серединных - с округлением до рублей
+    private BigDecimal exactMedianPrice() {
+        BigDecimal[] sorted = Arrays.copyOf(exactPrices, count);
+        Arrays.sort(sorted);
+        if (count % 2 == 1) {
+            return sorted[count / 2];
+        }
+        return sorted[count / 2 - 1].add(sorted[count / 2]).divide(BigDecimal.valueOf(2), 0, RoundingMode.HALF_UP);
+    }
+
+    // Точные цены маршрута; пока цен с долями копейки не было, они строятся из копеек
+    private BigDecimal[] exactPrices() {
+        if (exactPrices != null) {
+            return exactPrices;
+        }
+        BigDecimal[] exact = new BigDecimal[Math.max(prices.length, 1)];
+        for (int i = 0; i < count; i++) {
+            exact[i] = FixedPointPrices.toBigDecimal(prices[i]);
+        }
+        return exact;
+    }
+
+    private void addToCorrection(BigDecimal difference) {
+        subKopeckCorrection = subKopeckCorrection == null ? difference : subKopeckCorrection.add(difference);
+    }
+
+    long medianPrice() {
+        if (prices == null) {
+            return priceSketch.quantile(0.5);
+        }
+        long lower = lowerMedianPrice();
+        if (count % 2 == 1) {
+            return lower;
+        }
+        return FixedPointPrices.midpointRubles(lower, upperMedianPrice());
+    }
+
+    long lowerMedianPrice() {
+        return OrderStatistics.select(prices, count, (count - 1) / 2);
+    }
+
+    long upperMedianPrice() {
+        return OrderStatistics.select(prices, count, count / 2);
+    }
+
+    private void addToSum(long kopecks) {
+        try {
+            priceSum = Math.addExact(priceSum, kopecks);
+        } catch (ArithmeticException e) {
+            overflowedSum = priceSumUnscaled().add(BigDecimal.valueOf(kopecks));
+            priceSum = 0;
+        }
+    }
+
+    private BigDecimal priceSumUnscaled() {
+        BigDecimal sum = BigDecimal.valueOf(priceSum);
+        return overflowedSum == null ? sum : overflowedSum.add(sum);
+    }
+}
@@ -0,0 +1,205 @@
+package org.sergey_white.service;
+
+import org.sergey_white.entity.RouteQuery;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Фильтр маршрута по сырым байтам объекта-билета.
+ * Значения origin_name и destination_name сравниваются с заранее закодированными в UTF-8 городами,
+ * строки при этом не создаются. Если значение нельзя сравнить побайтно (escape-последовательности,
+ * не строковый тип), объект пропускается дальше, и решение принимает обычная проверка по дереву.
+ * Фильтр без городов пропускает все билеты. Для нескольких маршрутов фильтр проверяет, что город отправления
+ * и город прибытия входят в списки запрошенных, точное совпадение пары остаётся за проверкой по дереву.
+ */
+class RouteFilter {
+    private static final byte[] ORIGIN_KEY = "origin_name".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DESTINATION_KEY = "destination_name".getBytes(StandardCharsets.UTF_8);
+
+    private static final int MISSING = 0;
+    private static final int MATCH = 1;
+    private static final int MISMATCH = 2;
+    private static final int UNKNOWN = 3;
+
+    private final byte[][] origins;
+    private final byte[][] destinations;
+
+    RouteFilter(String departurePoint, String arrivePoint) {
+        this.origins = departurePoint == null ? null : new byte[][]{departurePoint.getBytes(StandardCharsets.UTF_8)};
+        this.destinations = arrivePoint == null ? null : new byte[][]{arrivePoint.getBytes(StandardCharsets.UTF_8)};
+    }
+
+    RouteFilter(Collection<RouteQuery> routes) {
+        this.origins = encode(routes.stream().map(RouteQuery::getOriginName).distinct().toArray(String[]::new));
+        this.destinations = encode(routes.stream().map(RouteQuery::getDestinationName).distinct().toArray(String[]::new));
+    }
+
+    private static byte[][] encode(String[] cities) {
+        return Arrays.stream(cities).map(city -> city.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+    }
+
+    /**
+     * @param start позиция открывающей '{'
+     * @param end   позиция закрывающей '}'
+     * @return false, только если объект точно относится к другому маршруту
+     */
+    boolean matches(MappedTicketFile file, long start, long end) {
+        if (origins == null) {
+            return true;
+        }
+        int originState = containsEmpty(origins) ? MATCH : MISSING;
+        int destinationState = containsEmpty(destinations) ? MATCH : MISSING;
+        long position = skipWhitespace(file, start + 1, end);
+        while (position < end) {
+            if (file.get(position) != '"') {
+                return true;
+            }
+            long keyEnd = stringEnd(file, position, end);
+            if (keyEnd < 0 || containsEscape(file, position + 1, keyEnd)) {
+                return true;
+            }
+            byte[][] targets = null;
+            boolean isOrigin = false;
+            if (equalsRaw(file, position + 1, keyEnd, ORIGIN_KEY)) {
+                targets = origins;
+                isOrigin = true;
+            } else if (equalsRaw(file, position + 1, keyEnd, DESTINATION_KEY)) {
+                targets = destinations;
+            }
+            position = skipWhitespace(file, keyEnd + 1, end);
+            if (position >= end || file.get(position) != ':') {
+                return true;
+            }
+            position = skipWhitespace(file, position + 1, end);
+            long valueEnd = valueEnd(file, position, end);
+            if (valueEnd < 0) {
+                return true;
+            }
+            if (targets != null) {
+                int state = compareValue(file, position, valueEnd, targets);
+                if (isOrigin) {
+                    originState = state;
+                } else {
+                    destinationState = state;
+                }
+            }
+            position = skipWhitespace(file, valueEnd + 1, end);
+            if (position < end && file.get(position) == ',') {
+                position = skipWhitespace(file, position + 1, end);
+            }
+        }
+        return isPossible(originState) && isPossible(destinationState);
+    }
+
+    private static boolean isPossible(int state) {
+        return state == MATCH || state == UNKNOWN;
+    }
+
+    // Пустой город совпадает и с отсутствующим полем: asText() отсутствующего узла даёт пустую строку
+    private static boolean containsEmpty(byte[][] targets) {
+        for (byte[] target : targets) {
+            if (target.length == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int compareValue(MappedTicketFile file, long start, long end, byte[][] targets) {
+        if (file.get(start) != '"' || containsEscape(file, start + 1, end)) {
+            return UNKNOWN;
+        }
+        for (byte[] target : targets) {
+            if (equalsRaw(file, start + 1, end, target)) {
+                return MATCH;
+            }
+        }
+        return MISMATCH;
+    }
+
+    private static boolean containsEscape(MappedTicketFile file, long start, long end) {
+        for (long position = start; position < end; position++) {
+            if (file.get(position) == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equalsRaw(MappedTicketFile file, long start, long end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (file.get(start + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Позиция последнего байта значения; -1, если значение выходит за пределы объекта
+    private static long valueEnd(MappedTicketFile file, long start, long end) {
+        byte first = file.get(start);
+        if (first == '"') {
+            return stringEnd(file, start, end);
+        }
+        if (first == '{' || first == '[') {
+            return containerEnd(file, start, end);
+        }
+        long position = start;
+        while (position + 1 < end) {
+            byte next = file.get(position + 1);
+            if (next == ',' || next == '}' || isWhitespace(next)) {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    private static long stringEnd(MappedTicketFile file, long start, long end) {
+        for (long position = start + 1; position < end; position++) {
+            byte b = file.get(position);
+            if (b == '\\') {
+                position++;
+            } else if (b == '"') {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static long containerEnd(MappedTicketFile file, long start, long end) {
+        int depth = 0;
+        for (long position = start; position < end; position++) {
+            byte b = file.get(position);
+            if (b == '"') {
+                position = stringEnd(file, position, end);
+                if (position < 0) {
+                    return -1;
+                }
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (--depth == 0) {
+                    return position;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static long skipWhitespace(MappedTicketFile file, long position, long end) {
+        while (position < end && isWhitespace(file.get(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+}
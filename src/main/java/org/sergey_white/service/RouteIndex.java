@@ -0,0 +1,269 @@
+package org.sergey_white.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.sergey_white.entity.RouteQuery;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Индекс маршрутов файла с билетами, хранится рядом с данными в файле {@code <имя>.routes.idx}.
+ * <p>
+ * Формат: заголовок (версия файла данных {@link FileStamp} для проверки актуальности),
+ * каталог маршрутов (города и положение блока) и блоки смещений объектов-билетов, по одному на маршрут.
+ * В память читается только каталог, блок смещений нужного маршрута читается при запросе,
+ * поэтому запрос стоит пропорционально числу найденных билетов, а не размеру файла.
+ */
+class RouteIndex {
+    private static final int MAGIC = 0x52494458;
+    private static final int VERSION = 2;
+    private static final int LOCATION_SIZE = Long.BYTES + Integer.BYTES;
+
+    private final Path indexPath;
+    private final FileStamp dataStamp;
+    private final Map<String, long[]> blocks;
+    private final Map<String, LocationList> inMemory;
+
+    private RouteIndex(Path indexPath, FileStamp dataStamp, Map<String, long[]> blocks,
+                       Map<String, LocationList> inMemory) {
+        this.indexPath = indexPath;
+        this.dataStamp = dataStamp;
+        this.blocks = blocks;
+        this.inMemory = inMemory;
+    }
+
+    static Path sidecarOf(Path dataPath) {
+        return dataPath.resolveSibling(dataPath.getFileName() + ".routes.idx");
+    }
+
+    /**
+     * @return индекс из файла рядом с данными или null, если его нет или он построен по другой версии данных
+     */
+    static RouteIndex open(Path dataPath) throws IOException {
+        Path indexPath = sidecarOf(dataPath);
+        if (!Files.exists(indexPath)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            FileStamp dataStamp = new FileStamp(in.readLong(), in.readLong(), in.readUTF(), in.readLong());
+            if (!dataStamp.equals(FileStamp.of(dataPath))) {
+                return null;
+            }
+            int routeCount = in.readInt();
+            Map<String, long[]> blocks = new HashMap<>(routeCount * 2);
+            for (int i = 0; i < routeCount; i++) {
+                String key = routeKey(in.readUTF(), in.readUTF());
+                blocks.put(key, new long[]{in.readLong(), in.readInt()});
+            }
+            return new RouteIndex(indexPath, dataStamp, blocks, null);
+        }
+    }
+
+    /**
+     * Строит индекс и сохраняет его рядом с данными. Если сохранить не удалось, индекс остаётся в памяти,
+     * а причина попадает в предупреждения {@code errors}. Версия файла данных снимается до и после разбора:
+     * если файл менялся, индекс годится только для отображения {@code file}, не сохраняется
+     * и при следующем обращении строится заново.
+     */
+    static RouteIndex build(Path dataPath, MappedTicketFile file, long arrayStart,
+                            MappedTicketReader reader, ErrorAccounting errors) throws IOException {
+        FileStamp before = FileStamp.of(dataPath);
+        Map<String, LocationList> routes = new LinkedHashMap<>();
+        reader.readObjects(file, arrayStart, (start, length, node) -> routes
+                .computeIfAbsent(routeKey(node.path("origin_name").asText(), node.path("destination_name").asText()),
+                        key -> new LocationList())
+                .add(start, length));
+        // Размер отображения ловит подмену файла между отображением и первым снимком версии
+        if (!before.equals(FileStamp.of(dataPath)) || before.getSize() != file.size()) {
+            return new RouteIndex(null, null, null, routes);
+        }
+
+        Path indexPath = sidecarOf(dataPath);
+        try {
+            return new RouteIndex(indexPath, before, write(indexPath, before, routes), null);
+        } catch (IOException e) {
+            // Каталог только для чтения: индекс живёт в памяти до конца работы
+            errors.warn("Не удалось сохранить индекс маршрутов " + indexPath + ": " + e);
+            return new RouteIndex(null, before, null, routes);
+        }
+    }
+
+    private static Map<String, long[]> write(Path indexPath, FileStamp dataStamp,
+                                             Map<String, LocationList> routes) throws IOException {
+        // Своё временное имя у каждой сборки: параллельные сборки одного индекса не пишут в один файл
+        Path tempPath = Files.createTempFile(indexPath.toAbsolutePath().getParent(), indexPath.getFileName() + ".", ".tmp");
+        try {
+            Map<String, long[]> blocks = writeBlocks(tempPath, dataStamp, routes);
+            Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return blocks;
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    private static Map<String, long[]> writeBlocks(Path tempPath, FileStamp dataStamp,
+                                                   Map<String, LocationList> routes) throws IOException {
+        Map<String, long[]> blocks = new HashMap<>(routes.size() * 2);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(dataStamp.getSize());
+            out.writeLong(dataStamp.getModified());
+            out.writeUTF(dataStamp.getFileKey());
+            out.writeLong(dataStamp.getEdgeChecksum());
+            out.writeInt(routes.size());
+
+            List<String[]> names = new ArrayList<>();
+            long directorySize = 0;
+            for (String key : routes.keySet()) {
+                String[] route = splitKey(key);
+                names.add(route);
+                directorySize += utfLength(route[0]) + utfLength(route[1]) + Long.BYTES + Integer.BYTES;
+            }
+            long blockOffset = out.size() + directorySize;
+            int i = 0;
+            for (Map.Entry<String, LocationList> route : routes.entrySet()) {
+                String[] name = names.get(i++);
+                out.writeUTF(name[0]);
+                out.writeUTF(name[1]);
+                out.writeLong(blockOffset);
+                out.writeInt(route.getValue().size);
+                blocks.put(route.getKey(), new long[]{blockOffset, route.getValue().size});
+                blockOffset += (long) route.getValue().size * LOCATION_SIZE;
+            }
+            for (LocationList locations : routes.values()) {
+                for (int j = 0; j < locations.size; j++) {
+                    out.writeLong(locations.starts[j]);
+                    out.writeInt(locations.lengths[j]);
+                }
+            }
+        }
+        return blocks;
+    }
+
+    // Индекс без версии построен по менявшемуся файлу и годится только для того чтения, в котором построен
+    boolean isCurrent(Path dataPath) throws IOException {
+        return dataStamp != null
+                && (indexPath == null || Files.exists(indexPath))
+                && dataStamp.equals(FileStamp.of(dataPath));
+    }
+
+    /**
+     * Смещения объектов-билетов нескольких маршрутов, слитые в порядке файла.
+     */
+    LocationList locations(Collection<RouteQuery> routes) throws IOException {
+        LocationList merged = new LocationList();
+        for (RouteQuery route : routes) {
+            merged = merge(merged, locations(route.getOriginName(), route.getDestinationName()));
+        }
+        return merged;
+    }
+
+    /**
+     * Смещения и длины объектов-билетов маршрута в порядке файла.
+     */
+    LocationList locations(String originName, String destinationName) throws IOException {
+        if (inMemory != null) {
+            LocationList locations = inMemory.get(routeKey(originName, destinationName));
+            return locations != null ? locations : new LocationList();
+        }
+        long[] block = blocks.get(routeKey(originName, destinationName));
+        LocationList locations = new LocationList();
+        if (block == null || block[1] == 0) {
+            return locations;
+        }
+        int count = (int) block[1];
+        ByteBuffer buffer = ByteBuffer.allocate(count * LOCATION_SIZE);
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            long position = block[0];
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Индекс маршрутов " + indexPath + " повреждён");
+                }
+                position += read;
+            }
+        }
+        buffer.flip();
+        for (int i = 0; i < count; i++) {
+            locations.add(buffer.getLong(), buffer.getInt());
+        }
+        return locations;
+    }
+
+    private static LocationList merge(LocationList left, LocationList right) {
+        if (left.size == 0) {
+            return right;
+        }
+        LocationList merged = new LocationList();
+        int i = 0;
+        int j = 0;
+        while (i < left.size || j < right.size) {
+            if (j == right.size || (i < left.size && left.starts[i] < right.starts[j])) {
+                merged.add(left.starts[i], left.lengths[i++]);
+            } else {
+                merged.add(right.starts[j], right.lengths[j++]);
+            }
+        }
+        return merged;
+    }
+
+    private static String routeKey(String originName, String destinationName) {
+        return originName + '\u0000' + destinationName;
+    }
+
+    private static String[] splitKey(String key) {
+        int separator = key.indexOf('\u0000');
+        return new String[]{key.substring(0, separator), key.substring(separator + 1)};
+    }
+
+    // Длина строки в модифицированном UTF-8, как её пишет DataOutputStream.writeUTF
+    private static int utfLength(String value) {
+        int length = 2;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length += 1;
+            } else if (c <= 0x07FF) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    static final class LocationList {
+        long[] starts = new long[16];
+        int[] lengths = new int[16];
+        int size;
+
+        void add(long start, int length) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            starts[size] = start;
+            lengths[size] = length;
+            size++;
+        }
+    }
+}
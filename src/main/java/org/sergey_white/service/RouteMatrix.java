@@ -0,0 +1,60 @@
+package org.sergey_white.service;
+
+import org.sergey_white.entity.AnalysisResult;
+import org.sergey_white.entity.RouteStatistics;
+import org.sergey_white.storage.TicketTable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Статистика по всем маршрутам файла, собранная за одно чтение.
+ * Маршруты хранятся в порядке первого появления в файле.
+ */
+public class RouteMatrix {
+    private final Map<Long, AnalysisResult> routes = new LinkedHashMap<>();
+    private final SymbolDictionary dictionary;
+
+    RouteMatrix(Map<Long, RouteAggregator> aggregators, SymbolDictionary dictionary) {
+        this.dictionary = dictionary;
+        aggregators.forEach((key, aggregator) -> routes.put(key, aggregator.toResult(
+                dictionary.symbolOf(TicketTable.routeKeyOriginNameId(key)),
+                dictionary.symbolOf(TicketTable.routeKeyDestinationNameId(key)), dictionary)));
+    }
+
+    public RouteStatistics route(String originName, String destinationName) {
+        AnalysisResult result = result(originName, destinationName);
+        return result != null ? result.getStatistics() : null;
+    }
+
+    /**
+     * Результат анализа маршрута вместе с приблизительными перцентилями цены; null, если маршрута нет в файле.
+     */
+    public AnalysisResult result(String originName, String destinationName) {
+        int origin = dictionary.find(originName);
+        int destination = dictionary.find(destinationName);
+        if (origin < 0 || destination < 0) {
+            return null;
+        }
+        return routes.get(TicketTable.routeKey(origin, destination));
+    }
+
+    public Collection<RouteStatistics> routes() {
+        return routes.values().stream().map(AnalysisResult::getStatistics)
+                .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList));
+    }
+
+    public int size() {
+        return routes.size();
+    }
+
+    /**
+     * Словарь, по идентификаторам которого построена матрица.
+     */
+    public SymbolDictionary dictionary() {
+        return dictionary;
+    }
+}
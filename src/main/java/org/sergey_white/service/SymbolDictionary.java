@@ -0,0 +1,84 @@
+package org.sergey_white.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Словарь строковых значений билета (перевозчики, коды аэропортов, города) с плотными int-идентификаторами.
+ * Каждое значение хранится в одном экземпляре, идентификаторы стабильны на всё время жизни словаря,
+ * поэтому один словарь можно использовать для нескольких файлов и анализаторов.
+ * У перевозчиков своё пространство идентификаторов: массивы по перевозчикам в агрегатах маршрутов
+ * имеют размер по числу перевозчиков, а не по всем городам и кодам.
+ * Поиск по значению и по идентификатору идёт без блокировок, блокируется только регистрация нового значения.
+ */
+public class SymbolDictionary {
+    private final Symbols names = new Symbols();
+    private final Symbols carriers = new Symbols();
+
+    public int idOf(String symbol) {
+        return names.idOf(symbol);
+    }
+
+    /**
+     * @return идентификатор значения или -1, если его нет в словаре; новое значение не регистрируется
+     */
+    public int find(String symbol) {
+        return names.find(symbol);
+    }
+
+    public String symbolOf(int id) {
+        return names.symbolOf(id);
+    }
+
+    public int size() {
+        return names.size;
+    }
+
+    public int carrierIdOf(String carrier) {
+        return carriers.idOf(carrier);
+    }
+
+    public String carrierOf(int carrierId) {
+        return carriers.symbolOf(carrierId);
+    }
+
+    public int carrierCount() {
+        return carriers.size;
+    }
+
+    private static final class Symbols {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private volatile String[] symbols = new String[64];
+        private volatile int size;
+
+        int idOf(String symbol) {
+            Integer id = ids.get(symbol);
+            return id != null ? id : register(symbol);
+        }
+
+        int find(String symbol) {
+            return ids.getOrDefault(symbol, -1);
+        }
+
+        String symbolOf(int id) {
+            return symbols[id];
+        }
+
+        private synchronized int register(String symbol) {
+            Integer id = ids.get(symbol);
+            if (id == null) {
+                id = size;
+                String[] current = symbols;
+                if (id == current.length) {
+                    current = Arrays.copyOf(current, id * 2);
+                }
+                current[id] = symbol;
+                symbols = current;
+                size = id + 1;
+                ids.put(symbol, id);
+            }
+            return id;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package org.sergey_white.storage;
+
+import org.sergey_white.entity.CompactTicket;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Хранилище билетов вне кучи: записи фиксированной ширины в direct-буферах (слабах).
+ * Слабы выделяются по мере роста и не превышают заданный бюджет памяти.
+ * Редкие цены с долями копейки дополнительно хранятся точно в куче, в разреженной карте по номеру записи;
+ * каждая такая цена засчитывается в тот же бюджет по оценке {@link #EXACT_PRICE_SIZE} байт,
+ * так что файл из одних дробных цен упирается в бюджет, а не в размер кучи.
+ * <p>
+ * {@link #close()} отпускает слабы: память direct-буферов вернётся при ближайшей сборке мусора,
+ * не дожидаясь, пока станет недостижимым само хранилище. Закрытое хранилище на любое обращение бросает
+ * {@link IllegalStateException}.
+ */
+public class OffHeapTicketStore implements TicketStore {
+    private static final int RECORD_SIZE = 48;
+    private static final int SLAB_SIZE = 4 << 20;
+    // Узел HashMap, ключ Integer и BigDecimal с небольшим немасштабированным значением
+    static final int EXACT_PRICE_SIZE = 128;
+
+    private static final int CARRIER_ID = 0;
+    private static final int ORIGIN_ID = 4;
+    private static final int ORIGIN_NAME_ID = 8;
+    private static final int DESTINATION_ID = 12;
+    private static final int DESTINATION_NAME_ID = 16;
+    private static final int DEPARTURE_MINUTE = 20;
+    private static final int ARRIVAL_MINUTE = 28;
+    private static final int PRICE_KOPECKS = 36;
+    private static final int STOPS = 44;
+
+    private final long memoryBudget;
+    private final int recordsPerSlab;
+    private final long maxRecords;
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private final Map<Integer, BigDecimal> exactPrices = new HashMap<>();
+    private int size;
+    private boolean closed;
+
+    public OffHeapTicketStore(long memoryBudget) {
+        if (memoryBudget < RECORD_SIZE) {
+            throw new IllegalArgumentException("Бюджет памяти меньше одной записи: " + memoryBudget);
+        }
+        this.memoryBudget = memoryBudget;
+        this.maxRecords = Math.min(memoryBudget / RECORD_SIZE, Integer.MAX_VALUE);
+        this.recordsPerSlab = (int) Math.min(SLAB_SIZE / RECORD_SIZE, maxRecords);
+    }
+
+    @Override
+    public void add(CompactTicket ticket) {
+        checkOpen();
+        long needed = RECORD_SIZE + (ticket.getExactPrice() != null ? EXACT_PRICE_SIZE : 0);
+        if (size == maxRecords || usedBytes() + needed > memoryBudget) {
+            throw new IllegalStateException("Превышен бюджет памяти хранилища билетов: " + memoryBudget + " байт"
+                    + " (записей " + size + ", точных цен в куче " + exactPrices.size() + ")");
+        }
+        int slabIndex = size / recordsPerSlab;
+        if (slabIndex == slabs.size()) {
+            // Точные цены могли занять часть бюджета: последний слаб получает только остаток
+            int records = (int) Math.min(recordsPerSlab, (memoryBudget - usedBytes()) / RECORD_SIZE);
+            slabs.add(ByteBuffer.allocateDirect(records * RECORD_SIZE));
+        }
+        ByteBuffer slab = slabs.get(slabIndex);
+        int offset = (size % recordsPerSlab) * RECORD_SIZE;
+        slab.putInt(offset + CARRIER_ID, ticket.getCarrierId());
+        slab.putInt(offset + ORIGIN_ID, ticket.getOriginId());
+        slab.putInt(offset + ORIGIN_NAME_ID, ticket.getOriginNameId());
+        slab.putInt(offset + DESTINATION_ID, ticket.getDestinationId());
+        slab.putInt(offset + DESTINATION_NAME_ID, ticket.getDestinationNameId());
+        slab.putLong(offset + DEPARTURE_MINUTE, ticket.getDepartureEpochMinute());
+        slab.putLong(offset + ARRIVAL_MINUTE, ticket.getArrivalEpochMinute());
+        slab.putLong(offset + PRICE_KOPECKS, ticket.getPriceKopecks());
+        slab.put(offset + STOPS, ticket.getStops());
+        if (ticket.getExactPrice() != null) {
+            exactPrices.put(size, ticket.getExactPrice());
+        }
+        size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public long memoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Байты бюджета, занятые записанными билетами и точными ценами в куче.
+     */
+    public long usedBytes() {
+        return (long) size * RECORD_SIZE + (long) exactPrices.size() * EXACT_PRICE_SIZE;
+    }
+
+    public long allocatedBytes() {
+        return slabs.stream().mapToLong(ByteBuffer::capacity).sum();
+    }
+
+    public CompactTicket get(int row) {
+        ByteBuffer slab = slab(row);
+        int offset = offset(row);
+        return new CompactTicket(
+                slab.getInt(offset + CARRIER_ID),
+                slab.getInt(offset + ORIGIN_ID),
+                slab.getInt(offset + ORIGIN_NAME_ID),
+                slab.getInt(offset + DESTINATION_ID),
+                slab.getInt(offset + DESTINATION_NAME_ID),
+                slab.getLong(offset + DEPARTURE_MINUTE),
+                slab.getLong(offset + ARRIVAL_MINUTE),
+                slab.getLong(offset + PRICE_KOPECKS),
+                slab.get(offset + STOPS),
+                exactPrice(row)
+        );
+    }
+
+    @Override
+    public int carrierId(int row) {
+        return slab(row).getInt(offset(row) + CARRIER_ID);
+    }
+
+    @Override
+    public int originNameId(int row) {
+        return slab(row).getInt(offset(row) + ORIGIN_NAME_ID);
+    }
+
+    @Override
+    public int destinationNameId(int row) {
+        return slab(row).getInt(offset(row) + DESTINATION_NAME_ID);
+    }
+
+    @Override
+    public long departureMinute(int row) {
+        return slab(row).getLong(offset(row) + DEPARTURE_MINUTE);
+    }
+
+    @Override
+    public long arrivalMinute(int row) {
+        return slab(row).getLong(offset(row) + ARRIVAL_MINUTE);
+    }
+
+    @Override
+    public long priceKopecks(int row) {
+        return slab(row).getLong(offset(row) + PRICE_KOPECKS);
+    }
+
+    @Override
+    public BigDecimal exactPrice(int row) {
+        return exactPrices.isEmpty() ? null : exactPrices.get(row);
+    }
+
+    @Override
+    public byte stops(int row) {
+        return slab(row).get(offset(row) + STOPS);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        slabs.clear();
+        exactPrices.clear();
+        size = 0;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Хранилище билетов закрыто");
+        }
+    }
+
+    private ByteBuffer slab(int row) {
+        checkOpen();
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Нет записи с номером " + row);
+        }
+        return slabs.get(row / recordsPerSlab);
+    }
+
+    private int offset(int row) {
+        return (row % recordsPerSlab) * RECORD_SIZE;
+    }
+}
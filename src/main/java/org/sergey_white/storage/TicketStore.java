@@ -0,0 +1,42 @@
+package org.sergey_white.storage;
+
+import org.sergey_white.entity.CompactTicket;
+
+import java.math.BigDecimal;
+
+/**
+ * Хранилище загруженных билетов с доступом к полям по номеру записи.
+ * Идентификаторы - из словаря анализатора, который загружал билеты.
+ * После {@link #close()} хранилище больше не используется.
+ */
+public interface TicketStore extends AutoCloseable {
+    void add(CompactTicket ticket);
+
+    int size();
+
+    int carrierId(int row);
+
+    int originNameId(int row);
+
+    int destinationNameId(int row);
+
+    long departureMinute(int row);
+
+    long arrivalMinute(int row);
+
+    long priceKopecks(int row);
+
+    /**
+     * Точная цена в рублях, если она не выражается целым числом копеек; иначе null.
+     */
+    BigDecimal exactPrice(int row);
+
+    byte stops(int row);
+
+    /**
+     * Освобождает память хранилища. Хранилищу в куче освобождать нечего.
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,220 @@
+package org.sergey_white.storage;
+
+import org.sergey_white.entity.CompactTicket;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Колоночная таблица билетов: каждое поле хранится в своём примитивном массиве.
+ * Массивы-колонки отдаются наружу как есть для последовательного сканирования,
+ * их длина может быть больше {@link #size()}.
+ * Редкие цены с долями копейки дополнительно хранятся точно в разреженной карте по номеру строки.
+ * Маршрут строки - плотный идентификатор пары городов; поиск идентификатора по паре идёт
+ * по открытой адресации на примитивных массивах, без упаковки ключа на каждую строку.
+ */
+public class TicketTable implements TicketStore {
+    private int size;
+    private int[] carrierId;
+    private long[] departureMinute;
+    private long[] arrivalMinute;
+    private long[] priceKopecks;
+    private byte[] stops;
+    private int[] routeId;
+
+    private final Map<Integer, BigDecimal> exactPrices = new HashMap<>();
+    private long[] routeKeys = new long[8];
+    // Слоты хеш-таблицы маршрутов: идентификатор маршрута + 1, 0 - пустой слот
+    private int[] routeSlots = new int[16];
+    private int routeCount;
+
+    public TicketTable() {
+        this(16);
+    }
+
+    public TicketTable(int capacity) {
+        capacity = Math.max(capacity, 1);
+        carrierId = new int[capacity];
+        departureMinute = new long[capacity];
+        arrivalMinute = new long[capacity];
+        priceKopecks = new long[capacity];
+        stops = new byte[capacity];
+        routeId = new int[capacity];
+    }
+
+    @Override
+    public void add(CompactTicket ticket) {
+        if (size == carrierId.length) {
+            grow();
+        }
+        carrierId[size] = ticket.getCarrierId();
+        departureMinute[size] = ticket.getDepartureEpochMinute();
+        arrivalMinute[size] = ticket.getArrivalEpochMinute();
+        priceKopecks[size] = ticket.getPriceKopecks();
+        if (ticket.getExactPrice() != null) {
+            exactPrices.put(size, ticket.getExactPrice());
+        }
+        stops[size] = ticket.getStops();
+        routeId[size] = registerRoute(ticket.getOriginNameId(), ticket.getDestinationNameId());
+        size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int carrierId(int row) {
+        return carrierId[row];
+    }
+
+    @Override
+    public int originNameId(int row) {
+        return routeOriginNameId(routeId[row]);
+    }
+
+    @Override
+    public int destinationNameId(int row) {
+        return routeDestinationNameId(routeId[row]);
+    }
+
+    @Override
+    public long departureMinute(int row) {
+        return departureMinute[row];
+    }
+
+    @Override
+    public long arrivalMinute(int row) {
+        return arrivalMinute[row];
+    }
+
+    @Override
+    public long priceKopecks(int row) {
+        return priceKopecks[row];
+    }
+
+    @Override
+    public BigDecimal exactPrice(int row) {
+        return exactPrices.isEmpty() ? null : exactPrices.get(row);
+    }
+
+    /**
+     * Есть ли в таблице цены с долями копейки.
+     */
+    public boolean hasExactPrices() {
+        return !exactPrices.isEmpty();
+    }
+
+    @Override
+    public byte stops(int row) {
+        return stops[row];
+    }
+
+    public int[] carrierIds() {
+        return carrierId;
+    }
+
+    public long[] departureMinutes() {
+        return departureMinute;
+    }
+
+    public long[] arrivalMinutes() {
+        return arrivalMinute;
+    }
+
+    public long[] pricesKopecks() {
+        return priceKopecks;
+    }
+
+    public byte[] stops() {
+        return stops;
+    }
+
+    public int[] routeIds() {
+        return routeId;
+    }
+
+    public int routeCount() {
+        return routeCount;
+    }
+
+    /**
+     * @return идентификатор маршрута или -1, если в таблице нет строк с таким маршрутом
+     */
+    public int routeIdOf(int originNameId, int destinationNameId) {
+        return routeSlots[routeSlot(routeKey(originNameId, destinationNameId))] - 1;
+    }
+
+    public int routeOriginNameId(int route) {
+        return routeKeyOriginNameId(routeKeys[route]);
+    }
+
+    public int routeDestinationNameId(int route) {
+        return routeKeyDestinationNameId(routeKeys[route]);
+    }
+
+    private int registerRoute(int originNameId, int destinationNameId) {
+        long key = routeKey(originNameId, destinationNameId);
+        int slot = routeSlot(key);
+        if (routeSlots[slot] != 0) {
+            return routeSlots[slot] - 1;
+        }
+        int id = routeCount++;
+        if (id == routeKeys.length) {
+            routeKeys = Arrays.copyOf(routeKeys, id * 2);
+        }
+        routeKeys[id] = key;
+        routeSlots[slot] = id + 1;
+        // Заполнение не больше половины: цепочки проб остаются короткими
+        if (routeCount * 2 > routeSlots.length) {
+            rehashRoutes();
+        }
+        return id;
+    }
+
+    // Слот с этим маршрутом или пустой слот, куда его записать
+    private int routeSlot(long key) {
+        int mask = routeSlots.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (routeSlots[slot] != 0 && routeKeys[routeSlots[slot] - 1] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehashRoutes() {
+        routeSlots = new int[routeSlots.length * 2];
+        for (int id = 0; id < routeCount; id++) {
+            routeSlots[routeSlot(routeKeys[id])] = id + 1;
+        }
+    }
+
+    /**
+     * Ключ маршрута: идентификатор города вылета в старших 32 битах, прилёта - в младших.
+     * Тот же ключ используют агрегаты маршрутов в {@code RouteMatrix}.
+     */
+    public static long routeKey(int originNameId, int destinationNameId) {
+        return ((long) originNameId << 32) | (destinationNameId & 0xFFFFFFFFL);
+    }
+
+    public static int routeKeyOriginNameId(long routeKey) {
+        return (int) (routeKey >>> 32);
+    }
+
+    public static int routeKeyDestinationNameId(long routeKey) {
+        return (int) routeKey;
+    }
+
+    private void grow() {
+        int capacity = carrierId.length * 2;
+        carrierId = Arrays.copyOf(carrierId, capacity);
+        departureMinute = Arrays.copyOf(departureMinute, capacity);
+        arrivalMinute = Arrays.copyOf(arrivalMinute, capacity);
+        priceKopecks = Arrays.copyOf(priceKopecks, capacity);
+        stops = Arrays.copyOf(stops, capacity);
+        routeId = Arrays.copyOf(routeId, capacity);
+    }
+}
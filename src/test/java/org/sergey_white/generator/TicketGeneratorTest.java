@@ -0,0 +1,89 @@
+package org.sergey_white.generator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Файл генератора воспроизводится по зерну при любом числе потоков, доли ошибочных и ночных записей
+ * соответствуют настройкам, а пустой файл остаётся корректным JSON.
+ */
+class TicketGeneratorTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void sameSeedGivesSameBytes() throws IOException {
+        // Больше одного блока, чтобы порядок записи блоков тоже проверялся
+        long count = TicketGenerator.BLOCK_SIZE * 2L + 17;
+        byte[] single = generate(GeneratorSettings.builder().ticketCount(count).seed(7).threads(1).build());
+        byte[] parallel = generate(GeneratorSettings.builder().ticketCount(count).seed(7).threads(4).build());
+        byte[] otherSeed = generate(GeneratorSettings.builder().ticketCount(count).seed(8).threads(4).build());
+
+        assertArrayEquals(single, parallel);
+        assertFalse(Arrays.equals(single, otherSeed));
+        assertEquals(count, MAPPER.readTree(single).path("tickets").size());
+    }
+
+    @Test
+    void ratesShowUpInOutput() throws IOException {
+        int count = 20_000;
+        JsonNode tickets = MAPPER.readTree(generate(GeneratorSettings.builder()
+                .ticketCount(count).malformedRate(0.1).overnightRate(0.3).build())).path("tickets");
+
+        int malformed = 0;
+        int overnight = 0;
+        for (JsonNode ticket : tickets) {
+            if (isMalformed(ticket)) {
+                malformed++;
+            } else if (!ticket.path("departure_date").asText().equals(ticket.path("arrival_date").asText())) {
+                overnight++;
+            }
+        }
+        assertEquals(0.1, malformed / (double) count, 0.015);
+        // Дата прилёта отличается от даты вылета только у ночных рейсов
+        assertEquals(0.3, overnight / (double) (count - malformed), 0.02);
+    }
+
+    @Test
+    void zeroRatesGiveCleanDaytimeFlights() throws IOException {
+        JsonNode tickets = MAPPER.readTree(generate(GeneratorSettings.builder()
+                .ticketCount(5_000).malformedRate(0).overnightRate(0).build())).path("tickets");
+
+        for (JsonNode ticket : tickets) {
+            assertFalse(isMalformed(ticket), ticket.toString());
+            assertEquals(ticket.path("departure_date").asText(), ticket.path("arrival_date").asText());
+        }
+    }
+
+    @Test
+    void zeroTicketsGiveValidJson() throws IOException {
+        JsonNode root = MAPPER.readTree(generate(GeneratorSettings.builder().ticketCount(0).build()));
+
+        assertTrue(root.path("tickets").isArray());
+        assertEquals(0, root.path("tickets").size());
+    }
+
+    // Четыре вида ошибок генератора: дата, время, цена строкой с буквой и отрицательная цена
+    private static boolean isMalformed(JsonNode ticket) {
+        JsonNode price = ticket.path("price");
+        return ticket.path("departure_date").asText().equals("99.99.99")
+                || ticket.path("arrival_time").asText().equals("25:61")
+                || price.isTextual()
+                || price.asLong() < 0;
+    }
+
+    private static byte[] generate(GeneratorSettings settings) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TicketGenerator(settings).write(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,117 @@
+package org.sergey_white.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sergey_white.service.DatasetHolder;
+import org.sergey_white.service.FlyAnalyzer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Точки входа отвечают только на свой адрес и свой метод.
+ */
+class TicketQueryServerTest {
+    private final HttpClient client = HttpClient.newHttpClient();
+    private DatasetHolder dataset;
+    private TicketQueryServer server;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void start() throws IOException {
+        Path file = directory.resolve("tickets.json");
+        Files.writeString(file, "{\"tickets\": []}", StandardCharsets.UTF_8);
+        dataset = new DatasetHolder(new FlyAnalyzer(), file);
+        server = new TicketQueryServer(dataset, new InetSocketAddress("127.0.0.1", 0), 2);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        server.stop();
+        dataset.close();
+    }
+
+    @Test
+    void pathsMustMatchExactly() throws IOException, InterruptedException {
+        assertEquals(200, get("/route?from=A&to=B"));
+        assertEquals(404, get("/routeX?from=A&to=B"));
+        assertEquals(404, get("/route/anything?from=A&to=B"));
+        assertEquals(404, get("/health/x"));
+        assertEquals(404, get("/metricsX"));
+    }
+
+    @Test
+    void healthAcceptsOnlyGet() throws IOException, InterruptedException {
+        assertEquals(200, get("/health"));
+        HttpResponse<String> response = client.send(request("/health")
+                .POST(HttpRequest.BodyPublishers.ofString("{}")).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(405, response.statusCode());
+        assertEquals("GET", response.headers().firstValue("Allow").orElse(null));
+    }
+
+    @Test
+    void routeQueriesAreCountedByResult() throws IOException, InterruptedException {
+        get("/route?from=A&to=B");
+        String metrics = client.send(request("/metrics").GET().build(), HttpResponse.BodyHandlers.ofString()).body();
+        assertTrue(metrics.contains("fly_route_queries_total{found=\"false\"} 1\n"), metrics);
+        assertTrue(metrics.contains("fly_route_queries_total{found=\"true\"} 0\n"), metrics);
+    }
+
+    @Test
+    void oversizedBatchIsRejected() throws IOException, InterruptedException {
+        // Длина известна заранее: отказ по Content-Length приходит, хотя само тело ещё не отправлено
+        try (Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(("POST /routes HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Content-Length: " + (TicketQueryServer.MAX_BATCH_BYTES + 1) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            String status = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.US_ASCII)).readLine();
+            assertTrue(status.startsWith("HTTP/1.1 413"), status);
+        }
+        // Без длины (chunked) тело читается только до предела
+        byte[] chunked = " ".repeat(TicketQueryServer.MAX_BATCH_BYTES + 1).getBytes(StandardCharsets.UTF_8);
+        assertEquals(413, post(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(chunked))));
+    }
+
+    @Test
+    void batchRouteCountIsLimited() throws IOException, InterruptedException {
+        String route = "{\"origin_name\":\"A\",\"destination_name\":\"B\"}";
+        String atLimit = "[" + String.join(",", Collections.nCopies(TicketQueryServer.MAX_BATCH_ROUTES, route)) + "]";
+        String overLimit = "[" + String.join(",", Collections.nCopies(TicketQueryServer.MAX_BATCH_ROUTES + 1, route)) + "]";
+        assertEquals(200, post(HttpRequest.BodyPublishers.ofString(atLimit)));
+        assertEquals(413, post(HttpRequest.BodyPublishers.ofString(overLimit)));
+    }
+
+    private int post(HttpRequest.BodyPublisher body) throws IOException, InterruptedException {
+        return client.send(request("/routes").POST(body).build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private int get(String path) throws IOException, InterruptedException {
+        return client.send(request(path).GET().build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path));
+    }
+}
@@ -0,0 +1,156 @@
+package org.sergey_white.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Перезагрузка публикует новый снимок целиком, а сбой чтения оставляет прежний.
+ */
+class DatasetHolderTest {
+    private static final String ORIGIN = "Владивосток";
+    private static final String DESTINATION = "Тель-Авив";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void reloadSwapsSnapshot() throws IOException {
+        for (IngestionMode mode : new IngestionMode[]{IngestionMode.STREAMING, IngestionMode.MEMORY_MAPPED}) {
+            Path file = directory.resolve(mode.name() + ".json");
+            write(file, ticket("TK", "12400"));
+            try (DatasetHolder dataset = new DatasetHolder(new FlyAnalyzer(mode), file)) {
+                DatasetSnapshot first = dataset.current();
+                assertEquals(1, first.getVersion(), mode.name());
+                assertEquals(1, first.getRoutes().route(ORIGIN, DESTINATION).getTicketCount(), mode.name());
+
+                // Файл не менялся: снимок остаётся тем же объектом
+                assertTrue(dataset.reload(), mode.name());
+                assertSame(first, dataset.current(), mode.name());
+
+                write(file, ticket("TK", "12400") + ",\n" + ticket("S7", "13100"));
+                assertTrue(dataset.reload(), mode.name());
+                DatasetSnapshot second = dataset.current();
+                assertEquals(2, second.getVersion(), mode.name());
+                assertEquals(2, second.getRoutes().route(ORIGIN, DESTINATION).getTicketCount(), mode.name());
+                // Прежний снимок не изменился и остаётся годным для запросов, которые его взяли
+                assertEquals(1, first.getRoutes().route(ORIGIN, DESTINATION).getTicketCount(), mode.name());
+
+                // Словарь у каждого снимка свой: перевозчик, которого больше нет в файле, в новый словарь не попадает
+                write(file, ticket("S7", "13100"));
+                assertTrue(dataset.reload(), mode.name());
+                SymbolDictionary third = dataset.current().getRoutes().dictionary();
+                assertEquals(1, third.carrierCount(), mode.name());
+                assertEquals("S7", third.carrierOf(0), mode.name());
+                assertEquals(2, second.getRoutes().dictionary().carrierCount(), mode.name());
+            }
+        }
+    }
+
+    @Test
+    void failedReloadKeepsPreviousSnapshot() throws IOException {
+        for (IngestionMode mode : new IngestionMode[]{IngestionMode.STREAMING, IngestionMode.MEMORY_MAPPED}) {
+            Path file = directory.resolve(mode.name() + ".json");
+            write(file, ticket("TK", "12400"));
+            FlyAnalyzer analyzer = new FlyAnalyzer(mode);
+            try (DatasetHolder dataset = new DatasetHolder(analyzer, file)) {
+                DatasetSnapshot first = dataset.current();
+
+                // Объект с синтаксической ошибкой: поток бросает IOException, отображение в память - UncheckedIOException
+                write(file, ticket("TK", "12400") + ",\n  {\"origin\": }");
+                assertThrows(Exception.class, dataset::reload, mode.name());
+                assertSame(first, dataset.current(), mode.name());
+
+                // Фоновая перезагрузка не бросает исключение, а оставляет предупреждение
+                assertTrue(dataset.tryReload(), mode.name());
+                assertSame(first, dataset.current(), mode.name());
+                assertEquals(1, analyzer.getErrors().warnings().size(), mode.name());
+                assertTrue(analyzer.getErrors().warnings().get(0).startsWith("Не удалось перезагрузить файл"), mode.name());
+            }
+        }
+    }
+
+    @Test
+    void sameSizeRewriteIsReloaded() throws IOException {
+        for (IngestionMode mode : new IngestionMode[]{IngestionMode.STREAMING, IngestionMode.MEMORY_MAPPED}) {
+            Path file = directory.resolve(mode.name() + ".json");
+            write(file, ticket("TK", "12400"));
+            FileTime modified = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+            Files.setLastModifiedTime(file, modified);
+            try (DatasetHolder dataset = new DatasetHolder(new FlyAnalyzer(mode), file)) {
+                // Тот же размер и то же время изменения: отличается только содержимое
+                write(file, ticket("S7", "12400"));
+                Files.setLastModifiedTime(file, modified);
+                assertTrue(dataset.reload(), mode.name());
+                assertEquals(2, dataset.current().getVersion(), mode.name());
+                assertEquals("S7", dataset.current().getRoutes().dictionary().carrierOf(0), mode.name());
+            }
+        }
+    }
+
+    @Test
+    void watcherSurvivesFailedReload() throws IOException, InterruptedException {
+        Path file = directory.resolve("watched.json");
+        write(file, ticket("TK", "12400"));
+        FlyAnalyzer analyzer = new FlyAnalyzer(IngestionMode.MEMORY_MAPPED);
+        try (DatasetHolder dataset = new DatasetHolder(analyzer, file, 50)) {
+            dataset.startWatching();
+
+            write(file, ticket("TK", "12400") + ",\n  {\"origin\": }");
+            awaitTrue(() -> !analyzer.getErrors().warnings().isEmpty());
+            assertTrue(dataset.isWatching());
+            assertEquals(1, dataset.current().getVersion());
+
+            // Следующее изменение файла подхватывает тот же поток
+            write(file, ticket("TK", "12400") + ",\n" + ticket("S7", "13100"));
+            awaitTrue(() -> dataset.current().getVersion() == 2);
+            assertTrue(dataset.isWatching());
+            assertEquals(2, dataset.current().getRoutes().route(ORIGIN, DESTINATION).getTicketCount());
+        }
+    }
+
+    @Test
+    void warningsAreBounded() throws IOException {
+        Path file = directory.resolve("tickets.json");
+        write(file, ticket("TK", "12400"));
+        FlyAnalyzer analyzer = new FlyAnalyzer(IngestionMode.STREAMING);
+        try (DatasetHolder dataset = new DatasetHolder(analyzer, file)) {
+            write(file, "  {\"origin\": }");
+            for (int i = 0; i < ErrorAccounting.MAX_WARNINGS + 20; i++) {
+                assertTrue(dataset.tryReload());
+            }
+            assertEquals(ErrorAccounting.MAX_WARNINGS, analyzer.getErrors().warnings().size());
+            assertEquals(20, analyzer.getErrors().droppedWarnings());
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Условие не выполнилось за 10 с");
+            Thread.sleep(20);
+        }
+    }
+
+    private static void write(Path file, String tickets) throws IOException {
+        Files.writeString(file, "{\"tickets\": [\n" + tickets + "\n]}", StandardCharsets.UTF_8);
+    }
+
+    private static String ticket(String carrier, String price) {
+        return "  {\"origin\": \"VVO\", \"origin_name\": \"" + ORIGIN + "\", \"destination\": \"TLV\", "
+                + "\"destination_name\": \"" + DESTINATION + "\", \"departure_date\": \"12.05.18\", "
+                + "\"departure_time\": \"16:20\", \"arrival_date\": \"12.05.18\", \"arrival_time\": \"22:10\", "
+                + "\"carrier\": \"" + carrier + "\", \"stops\": 1, \"price\": \"" + price + "\"}";
+    }
+}
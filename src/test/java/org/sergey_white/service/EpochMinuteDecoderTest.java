@@ -0,0 +1,113 @@
+package org.sergey_white.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * EpochMinuteDecoder сверяется с прежним разбором через DateTimeFormatter.
+ */
+class EpochMinuteDecoderTest {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yy");
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("[H:mm][HH:mm]");
+
+    @Test
+    void everyDateOfTheCenturyMatchesFormatter() {
+        // Дни с 29 по 31 проверяются для каждого месяца: SMART сдвигает их на последний день месяца
+        for (int year = 0; year < 100; year++) {
+            for (int month = 1; month <= 12; month++) {
+                for (int day = 1; day <= 31; day++) {
+                    String date = String.format("%02d.%02d.%02d", day, month, year);
+                    assertEquals(reference(date, "12:30"), EpochMinuteDecoder.decode(date, "12:30", "отправления"), date);
+                }
+            }
+        }
+    }
+
+    @Test
+    void everyTimeOfDayMatchesFormatter() {
+        for (int hour = 0; hour < 24; hour++) {
+            for (int minute = 0; minute < 60; minute++) {
+                for (String time : List.of(String.format("%d:%02d", hour, minute), String.format("%02d:%02d", hour, minute))) {
+                    assertEquals(reference("29.02.24", time), EpochMinuteDecoder.decode("29.02.24", time, "прибытия"), time);
+                }
+            }
+        }
+        assertEquals(reference("31.12.99", "24:00"), EpochMinuteDecoder.decode("31.12.99", "24:00", "прибытия"));
+    }
+
+    @Test
+    void malformedValuesFailLikeFormatter() {
+        for (String date : List.of("", "1.01.24", "01.1.24", "01.01.2024", "00.01.24", "32.01.24", "01.00.24",
+                "01.13.24", "01-01-24", "aa.01.24", "01.01.2", "01.01.24 ")) {
+            assertThrows(DateTimeParseException.class, () -> reference(date, "10:00"), date);
+            DateTimeParseException e = assertThrows(DateTimeParseException.class,
+                    () -> EpochMinuteDecoder.decode(date, "10:00", "отправления"), date);
+            assertEquals(ErrorKind.DATE_PARSE, EpochMinuteDecoder.errorKind(e), date);
+        }
+        for (String time : List.of("", ":00", "10:0", "10:000", "10.00", "24:01", "25:00", "10:60", "1a:00", " 1:00")) {
+            assertThrows(DateTimeParseException.class, () -> reference("01.01.24", time), time);
+            DateTimeParseException e = assertThrows(DateTimeParseException.class,
+                    () -> EpochMinuteDecoder.decode("01.01.24", time, "отправления"), time);
+            assertEquals(ErrorKind.TIME_PARSE, EpochMinuteDecoder.errorKind(e), time);
+        }
+    }
+
+    @Test
+    void randomStringsAgreeWithFormatter() {
+        Random random = new Random(7);
+        String alphabet = "0123456789.:";
+        for (int i = 0; i < 200_000; i++) {
+            // Корректное значение с одной случайной заменой символа либо совсем случайная строка
+            String date = random.nextBoolean()
+                    ? mutate(random, String.format("%02d.%02d.%02d", 1 + random.nextInt(31), 1 + random.nextInt(12), random.nextInt(100)), alphabet)
+                    : randomString(random, alphabet, 10);
+            String time = random.nextBoolean()
+                    ? mutate(random, String.format(random.nextBoolean() ? "%d:%02d" : "%02d:%02d", random.nextInt(25), random.nextInt(60)), alphabet)
+                    : randomString(random, alphabet, 6);
+            Long expected;
+            try {
+                expected = reference(date, time);
+            } catch (DateTimeParseException e) {
+                expected = null;
+            }
+            Long actual;
+            try {
+                actual = EpochMinuteDecoder.decode(date, time, "отправления");
+            } catch (DateTimeParseException e) {
+                actual = null;
+            }
+            assertEquals(expected, actual, date + " " + time);
+        }
+    }
+
+    private static String mutate(Random random, String value, String alphabet) {
+        char[] chars = value.toCharArray();
+        chars[random.nextInt(chars.length)] = alphabet.charAt(random.nextInt(alphabet.length()));
+        return new String(chars);
+    }
+
+    private static String randomString(Random random, String alphabet, int maxLength) {
+        StringBuilder value = new StringBuilder();
+        int length = random.nextInt(maxLength + 1);
+        for (int i = 0; i < length; i++) {
+            value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return value.toString();
+    }
+
+    private static long reference(String date, String time) {
+        LocalDateTime dateTime = LocalDateTime.of(LocalDate.parse(date, DATE_FORMATTER), LocalTime.parse(time, TIME_FORMATTER));
+        return dateTime.toEpochSecond(ZoneOffset.UTC) / 60;
+    }
+}
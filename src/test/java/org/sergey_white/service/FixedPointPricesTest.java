@@ -0,0 +1,122 @@
+package org.sergey_white.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Цены в копейках сверяются с прежним расчётом через BigDecimal.
+ */
+class FixedPointPricesTest {
+    private static final long[] MANTISSA_BOUNDS = {10L, 1_000L, 100_000L, 10_000_000L, 1_000_000_000_000L, 1_000_000_000_000_000L};
+
+    @Test
+    void parseMatchesBigDecimalOnTypicalPrices() {
+        for (String price : List.of("0", "-0", "+12400", "12400", "12400.5", "12400.005", "12400.004999", "0.005",
+                "-0.005", "-12400.50", "1.24E4", "1.24e+4", "124E-2", "0.00000000000000000000001", "1E-30",
+                "00012400.0000", "9.99999999999999999", "12345678901234567.89", "1E16", "0E+100", "1e0", ".5", "5.")) {
+            assertEquals(reference(price), FixedPointPrices.parseKopecks(price), price);
+        }
+    }
+
+    @Test
+    void parseMatchesBigDecimalOnRandomPrices() {
+        Random random = new Random(11);
+        for (int i = 0; i < 200_000; i++) {
+            String price = randomPrice(random);
+            long expected;
+            try {
+                expected = reference(price);
+            } catch (NumberFormatException e) {
+                assertThrows(NumberFormatException.class, () -> FixedPointPrices.parseKopecks(price), price);
+                continue;
+            }
+            assertEquals(expected, FixedPointPrices.parseKopecks(price), price);
+        }
+    }
+
+    @Test
+    void malformedPricesFailLikeBigDecimal() {
+        for (String price : List.of("", "-", ".", "abc", "1.2.3", "1e", "1e+", "1e1.5", "12 400", "0x10", "1,5", "1E99999999999")) {
+            assertThrows(NumberFormatException.class, () -> new BigDecimal(price), price);
+            assertThrows(NumberFormatException.class, () -> FixedPointPrices.parseKopecks(price), price);
+        }
+        // Число корректно, но в копейках не помещается в long
+        assertThrows(NumberFormatException.class, () -> FixedPointPrices.parseKopecks("1E20"));
+        assertThrows(NumberFormatException.class, () -> FixedPointPrices.parseKopecks("1e1000"));
+        assertThrows(NumberFormatException.class, () -> FixedPointPrices.parseKopecks("92233720368547758.08"));
+        assertEquals(Long.MAX_VALUE, FixedPointPrices.parseKopecks("92233720368547758.07"));
+    }
+
+    @Test
+    void formatRoundTripsThroughBigDecimal() {
+        Random random = new Random(13);
+        for (int i = 0; i < 100_000; i++) {
+            long kopecks = i < 1_000 ? i - 500 : random.nextLong() / (1 + random.nextInt(1_000_000));
+            String text = FixedPointPrices.format(kopecks);
+            BigDecimal expected = FixedPointPrices.toBigDecimal(kopecks);
+            if (kopecks % 100 == 0) {
+                expected = expected.setScale(0, RoundingMode.UNNECESSARY);
+            }
+            assertEquals(expected.toPlainString(), text, Long.toString(kopecks));
+            assertEquals(kopecks, FixedPointPrices.parseKopecks(text), text);
+        }
+    }
+
+    @Test
+    void averageAndMidpointRoundHalfUpToRubles() {
+        Random random = new Random(17);
+        for (int i = 0; i < 100_000; i++) {
+            long lower = random.nextInt(100_000_000);
+            long upper = lower + random.nextInt(100_000_000);
+            long count = 1 + random.nextInt(1000);
+            long sum = lower * count + random.nextInt(1000);
+
+            BigDecimal average = BigDecimal.valueOf(sum, 2).divide(BigDecimal.valueOf(count), 0, RoundingMode.HALF_UP);
+            assertEquals(average.movePointRight(2).longValueExact(), FixedPointPrices.averageRubles(sum, count));
+
+            BigDecimal midpoint = BigDecimal.valueOf(lower, 2).add(BigDecimal.valueOf(upper, 2))
+                    .divide(BigDecimal.valueOf(2), 0, RoundingMode.HALF_UP);
+            assertEquals(midpoint.movePointRight(2).longValueExact(), FixedPointPrices.midpointRubles(lower, upper));
+        }
+        // Сумма двух цен выходит за long: расчёт переходит на BigDecimal
+        assertEquals(Long.MAX_VALUE / 100 * 100, FixedPointPrices.midpointRubles(Long.MAX_VALUE - 1, Long.MAX_VALUE - 1));
+    }
+
+    private static String randomPrice(Random random) {
+        StringBuilder price = new StringBuilder();
+        if (random.nextInt(10) == 0) {
+            price.append(random.nextBoolean() ? '-' : '+');
+        }
+        price.append(random.nextInt(10) == 0 ? "0" : Long.toString(Math.abs(random.nextLong()) % MANTISSA_BOUNDS[random.nextInt(MANTISSA_BOUNDS.length)]));
+        if (random.nextBoolean()) {
+            price.append('.');
+            int fraction = random.nextInt(8);
+            for (int i = 0; i < fraction; i++) {
+                price.append((char) ('0' + random.nextInt(10)));
+            }
+        }
+        if (random.nextInt(4) == 0) {
+            price.append(random.nextBoolean() ? 'E' : 'e');
+            if (random.nextBoolean()) {
+                price.append(random.nextBoolean() ? '-' : '+');
+            }
+            price.append(random.nextInt(25));
+        }
+        return price.toString();
+    }
+
+    private static long reference(String price) {
+        try {
+            return new BigDecimal(price).movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException(e.getMessage());
+        }
+    }
+}
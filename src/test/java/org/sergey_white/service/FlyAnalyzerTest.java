@@ -0,0 +1,268 @@
+package org.sergey_white.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sergey_white.entity.AnalysisResult;
+import org.sergey_white.entity.RouteStatistics;
+import org.sergey_white.report.TextReportRenderer;
+import org.sergey_white.storage.OffHeapTicketStore;
+import org.sergey_white.storage.TicketStore;
+import org.sergey_white.storage.TicketTable;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Все режимы чтения должны давать одинаковый результат на файле с BOM, не-объектами в массиве
+ * и строками с ошибочными датами и ценами.
+ */
+class FlyAnalyzerTest {
+    private static final String ORIGIN = "Владивосток";
+    private static final String DESTINATION = "Тель-Авив";
+    private static final String TICKETS = "{\"tickets\": [\n"
+            + ticket("TK", ORIGIN, "12.05.18", "16:20", "12.05.18", "22:10", "12400") + ",\n"
+            + ticket("S7", ORIGIN, "12.05.18", "17:20", "12.05.18", "23:50", "13100.50") + ",\n"
+            + ticket("SU", "\\u0412ладивосток", "12.05.18", "9:40", "12.05.18", "19:25", "1.5E4") + ",\n"
+            + "  1, \"строка\", null, [" + ticket("XX", ORIGIN, "12.05.18", "10:00", "12.05.18", "11:00", "1") + "],\n"
+            + ticket("BA", ORIGIN, "32.05.18", "16:20", "12.05.18", "22:10", "12400") + ",\n"
+            + ticket("BA", ORIGIN, "12.05.18", "16:20", "12.05.18", "25:10", "12400") + ",\n"
+            + ticket("BA", ORIGIN, "12.05.18", "16:20", "12.05.18", "22:10", "12 400") + ",\n"
+            + ticket("BA", ORIGIN, "12.05.18", "16:20", "12.05.18", "22:10", "-100") + ",\n"
+            + ticket("BA", ORIGIN, "12.05.18", "16:20", "12.05.18", "22:10", "-0.001") + ",\n"
+            + ticket("LH", "Москва", "12.05.18", "16:20", "12.05.18", "22:10", "1") + "\n"
+            + "]}";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void allModesAgreeOnMalformedRows() throws IOException {
+        Path file = directory.resolve("tickets.json");
+        Files.writeString(file, TICKETS, StandardCharsets.UTF_8);
+
+        for (IngestionMode mode : IngestionMode.values()) {
+            FlyAnalyzer analyzer = new FlyAnalyzer(mode);
+            RouteStatistics statistics = analyzer.analyze(file.toString(), ORIGIN, DESTINATION).getStatistics();
+
+            assertEquals(3, statistics.getTicketCount(), mode.name());
+            assertEquals(1350000, statistics.getAveragePriceKopecks(), mode.name());
+            assertEquals(Map.of("SU", 585L, "S7", 390L, "TK", 350L), statistics.getMinFlightTimes(), mode.name());
+            assertEquals(Map.of(ErrorKind.DATE_PARSE, 1L, ErrorKind.TIME_PARSE, 1L,
+                    ErrorKind.PRICE_FORMAT, 1L, ErrorKind.NEGATIVE_PRICE, 2L), analyzer.getErrors().counts(), mode.name());
+        }
+    }
+
+    @Test
+    void routeIndexNoticesSameSizeRewrite() throws IOException {
+        Path file = directory.resolve("indexed.json");
+        String ours = ticket("TK", ORIGIN, "12.05.18", "16:20", "12.05.18", "22:10", "12400");
+        String other = ticket("LH", "Москва", "12.05.18", "16:20", "12.05.18", "22:10", "1");
+        Files.writeString(file, "{\"tickets\": [\n" + ours + ",\n" + other + "\n]}", StandardCharsets.UTF_8);
+        FileTime modified = Files.getLastModifiedTime(file);
+        FlyAnalyzer cached = new FlyAnalyzer(IngestionMode.INDEXED);
+        assertEquals(1, cached.analyze(file.toString(), ORIGIN, DESTINATION).getStatistics().getTicketCount());
+
+        // Тот же размер и то же время изменения, но билет маршрута сдвинулся
+        Files.writeString(file, "{\"tickets\": [\n" + other + ",\n" + ours + "\n]}", StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(file, modified);
+
+        AnalysisResult expected = new FlyAnalyzer(IngestionMode.STREAMING).analyze(file.toString(), ORIGIN, DESTINATION);
+        assertEquals(1, expected.getStatistics().getTicketCount());
+        // Индекс из файла рядом с данными и индекс в памяти анализатора
+        assertEquals(expected, new FlyAnalyzer(IngestionMode.INDEXED).analyze(file.toString(), ORIGIN, DESTINATION));
+        assertEquals(expected, cached.analyze(file.toString(), ORIGIN, DESTINATION));
+    }
+
+    @Test
+    void byteOrderMarkIsSkippedInEveryMode() throws IOException {
+        Path plain = directory.resolve("plain.json");
+        Path withBom = directory.resolve("bom.json");
+        Files.writeString(plain, TICKETS, StandardCharsets.UTF_8);
+        Files.writeString(withBom, "\uFEFF" + TICKETS, StandardCharsets.UTF_8);
+
+        AnalysisResult expected = new FlyAnalyzer(IngestionMode.STREAMING).analyze(plain.toString(), ORIGIN, DESTINATION);
+        for (IngestionMode mode : IngestionMode.values()) {
+            FlyAnalyzer analyzer = new FlyAnalyzer(mode);
+            assertEquals(expected, analyzer.analyze(withBom.toString(), ORIGIN, DESTINATION), mode.name());
+            assertEquals(5, analyzer.getErrors().total(), mode.name());
+        }
+    }
+
+    @Test
+    void otherRoutesAreSkippedWithoutBreakingTheStream() throws IOException {
+        String times = "\"departure_date\": \"12.05.18\", \"departure_time\": \"16:20\", "
+                + "\"arrival_date\": \"12.05.18\", \"arrival_time\": \"22:10\", \"price\": \"100\"";
+        Path file = directory.resolve("routes.json");
+        Files.writeString(file, "{\"tickets\": [\n"
+                // Чужой маршрут: за городом идут вложенные объекты и массивы со скобками в строках
+                + "  {\"origin_name\": \"Москва\", \"extra\": {\"a\": [1, {\"b\": \"}]\"}], \"c\": {}}, "
+                + "\"destination_name\": \"" + DESTINATION + "\", \"carrier\": \"LH\", " + times + "},\n"
+                // Город прибытия раньше города отправления
+                + "  {\"destination_name\": \"" + DESTINATION + "\", \"carrier\": \"TK\", " + times
+                + ", \"origin_name\": \"" + ORIGIN + "\"},\n"
+                + "  {\"destination_name\": \"Сочи\", \"origin_name\": \"" + ORIGIN + "\", \"carrier\": \"S7\", " + times + "},\n"
+                // Не строка: решение за проверкой по дереву
+                + "  {\"origin_name\": 5, \"destination_name\": \"" + DESTINATION + "\", \"carrier\": \"U6\", " + times + "},\n"
+                + "  {\"origin_name\": \"" + ORIGIN + "\", \"destination_name\": \"" + DESTINATION + "\", \"carrier\": \"SU\", "
+                + "\"extra\": [[\"[\"]], " + times + "}\n"
+                + "]}", StandardCharsets.UTF_8);
+
+        for (IngestionMode mode : IngestionMode.values()) {
+            FlyAnalyzer analyzer = new FlyAnalyzer(mode);
+            RouteStatistics statistics = analyzer.analyze(file.toString(), ORIGIN, DESTINATION).getStatistics();
+            assertEquals(Map.of("TK", 350L, "SU", 350L), statistics.getMinFlightTimes(), mode.name());
+            // Индекс отдаёт только объекты маршрута
+            assertEquals(mode == IngestionMode.INDEXED ? 2 : 5, analyzer.getTicketsSeen(), mode.name());
+            assertEquals(2, analyzer.getTicketsMatched(), mode.name());
+        }
+    }
+
+    @Test
+    void quarantineKeepsRawRecords() throws IOException {
+        // Экранирование, пробелы, запись в несколько строк и цена с экспонентой после разбора дерева выглядели бы иначе
+        String multiLine = "{\"origin_name\" : \"" + ORIGIN + "\",\n    \"destination_name\":\"" + DESTINATION + "\", "
+                + "\"carrier\": \"B\\u0041\", \"departure_date\": \"32.05.18\", \"departure_time\": \"16:20\",\r\n"
+                + "    \"arrival_date\": \"12.05.18\", \"arrival_time\": \"22:10\", \"price\": 1.24E4}";
+        String negative = ticket("BA", ORIGIN, "12.05.18", "16:20", "12.05.18", "22:10", "-1.0E2").trim();
+        String tickets = "{\"tickets\": [\n  " + multiLine + ",\n  " + negative + ",\n"
+                + ticket("TK", ORIGIN, "12.05.18", "16:20", "12.05.18", "22:10", "12400") + "\n]}";
+        List<String> expected = List.of(multiLine.replace("\r\n", "  ").replace('\n', ' '), negative);
+
+        for (String prefix : new String[]{"", "\uFEFF"}) {
+            Path file = directory.resolve("raw.json");
+            Files.writeString(file, prefix + tickets, StandardCharsets.UTF_8);
+            for (IngestionMode mode : IngestionMode.values()) {
+                Path quarantine = directory.resolve(mode + ".rejected");
+                Files.deleteIfExists(quarantine);
+                FlyAnalyzer analyzer = new FlyAnalyzer(mode);
+                analyzer.getErrors().setQuarantineFile(quarantine);
+                analyzer.analyze(file.toString(), ORIGIN, DESTINATION);
+                analyzer.getErrors().close();
+
+                assertEquals(expected, Files.readAllLines(quarantine, StandardCharsets.UTF_8), mode.name());
+                assertEquals(expected.get(0), analyzer.getErrors().sample().get(0).getJson()
+                        .replace("\r\n", "  ").replace('\n', ' '), mode.name());
+            }
+        }
+    }
+
+    @Test
+    void storesFilterRowsByRoute() throws IOException {
+        Path file = directory.resolve("tickets.json");
+        Files.writeString(file, TICKETS, StandardCharsets.UTF_8);
+
+        for (IngestionMode mode : IngestionMode.values()) {
+            FlyAnalyzer analyzer = new FlyAnalyzer(mode);
+            AnalysisResult expected = analyzer.analyze(file.toString(), ORIGIN, DESTINATION);
+            OffHeapTicketStore offHeap;
+            try (OffHeapTicketStore store = analyzer.load(file.toString(), null, null, new OffHeapTicketStore(1 << 20));
+                 TicketTable table = analyzer.loadTable(file.toString(), null, null)) {
+                offHeap = store;
+                for (TicketStore tickets : new TicketStore[]{store, table}) {
+                    assertEquals(4, tickets.size(), mode.name());
+                    assertEquals(expected, analyzer.analyze(tickets, ORIGIN, DESTINATION), mode.name());
+                    assertEquals(1, analyzer.analyze(tickets, "Москва", DESTINATION).getStatistics().getTicketCount(), mode.name());
+                    assertEquals(0, analyzer.analyze(tickets, DESTINATION, ORIGIN).getStatistics().getTicketCount(), mode.name());
+                    assertEquals(0, analyzer.analyze(tickets, "Сочи", DESTINATION).getStatistics().getTicketCount(), mode.name());
+                    assertEquals(4, analyzer.analyze(tickets).getStatistics().getTicketCount(), mode.name());
+                }
+                // Колоночный путь таблицы
+                assertEquals(expected, analyzer.analyze(table, ORIGIN, DESTINATION), mode.name());
+                assertEquals(analyzer.analyze((TicketStore) table), analyzer.analyze(table), mode.name());
+                assertEquals(0, analyzer.analyze(table, "Сочи", DESTINATION).getStatistics().getTicketCount(), mode.name());
+            }
+            assertThrows(IllegalStateException.class, () -> offHeap.carrierId(0), mode.name());
+            assertEquals(0, offHeap.allocatedBytes(), mode.name());
+        }
+    }
+
+    @Test
+    void outOfRangeStopsAreClamped() throws IOException {
+        Path file = directory.resolve("stops.json");
+        Files.writeString(file, "{\"tickets\": [\n"
+                + ticket("TK", ORIGIN, "12.05.18", "16:20", "12.05.18", "22:10", "100").replace("\"stops\": 1", "\"stops\": 1000") + ",\n"
+                + ticket("SU", ORIGIN, "12.05.18", "16:20", "12.05.18", "22:10", "100").replace("\"stops\": 1", "\"stops\": -1000") + ",\n"
+                + ticket("S7", ORIGIN, "12.05.18", "16:20", "12.05.18", "22:10", "100").replace("\"stops\": 1", "\"stops\": -3") + "\n"
+                + "]}", StandardCharsets.UTF_8);
+
+        TicketTable table = new FlyAnalyzer().loadTable(file.toString(), ORIGIN, DESTINATION);
+        assertEquals(3, table.size());
+        assertEquals(Byte.MAX_VALUE, table.stops(0));
+        assertEquals(Byte.MIN_VALUE, table.stops(1));
+        assertEquals(-3, table.stops(2));
+    }
+
+    @Test
+    void readPhaseIsSplitOnlyOnRequest() throws IOException {
+        Path file = directory.resolve("tickets.json");
+        Files.writeString(file, TICKETS, StandardCharsets.UTF_8);
+
+        for (IngestionMode mode : IngestionMode.values()) {
+            FlyAnalyzer analyzer = new FlyAnalyzer(mode);
+            PhaseMetrics metrics = analyzer.getMetrics();
+            // По умолчанию замеряется только этап целиком, без отметок на билет
+            analyzer.analyze(file.toString(), ORIGIN, DESTINATION);
+            assertTrue(metrics.timing(Phase.READ).getCalls() > 0, mode.name());
+            for (Phase part : new Phase[]{Phase.PARSE, Phase.DECODE, Phase.AGGREGATE}) {
+                assertEquals(0, metrics.timing(part).getCalls(), mode.name() + " " + part);
+            }
+            assertFalse(metrics.summary().contains(Phase.DECODE.description()), mode.name());
+
+            metrics.setSplitRead(true);
+            analyzer.analyze(file.toString(), ORIGIN, DESTINATION);
+            for (Phase part : new Phase[]{Phase.PARSE, Phase.DECODE, Phase.AGGREGATE}) {
+                assertTrue(metrics.timing(part).getCalls() > 0, mode.name() + " " + part);
+            }
+            assertTrue(metrics.summary().contains(Phase.DECODE.description()), mode.name());
+        }
+    }
+
+    @Test
+    void subKopeckPricesMatchBaselineReport() throws IOException {
+        Path file = directory.resolve("sub-kopeck.json");
+        Files.writeString(file, "{\"tickets\": [\n"
+                + ticket("TK", ORIGIN, "12.05.18", "16:20", "12.05.18", "22:10", "100.005") + ",\n"
+                + ticket("TK", ORIGIN, "12.05.18", "16:20", "12.05.18", "22:10", "100.005") + ",\n"
+                + ticket("TK", ORIGIN, "12.05.18", "16:20", "12.05.18", "22:10", "102.99") + "\n"
+                + "]}", StandardCharsets.UTF_8);
+        String nl = System.lineSeparator();
+        String expected = "Средняя цена: 101 руб." + nl + "Медиана цены: 100.01 руб." + nl
+                + "Разница между средней ценой и медианой: 1.00 руб." + nl;
+
+        for (IngestionMode mode : IngestionMode.values()) {
+            FlyAnalyzer analyzer = new FlyAnalyzer(mode);
+            assertEquals(expected, priceLines(analyzer.analyze(file.toString(), ORIGIN, DESTINATION)), mode.name());
+            assertEquals(expected, priceLines(analyzer.analyze(analyzer.loadTable(file.toString(), ORIGIN, DESTINATION))),
+                    mode.name());
+            OffHeapTicketStore store = analyzer.load(file.toString(), ORIGIN, DESTINATION, new OffHeapTicketStore(1 << 20));
+            assertEquals(expected, priceLines(analyzer.analyze(store)), mode.name());
+        }
+    }
+
+    private static String priceLines(AnalysisResult result) throws IOException {
+        StringWriter out = new StringWriter();
+        new TextReportRenderer().render(result, out);
+        String report = out.toString();
+        return report.substring(report.indexOf("Средняя цена"));
+    }
+
+    private static String ticket(String carrier, String originName, String departureDate, String departureTime,
+                                 String arrivalDate, String arrivalTime, String price) {
+        return "  {\"origin\": \"VVO\", \"origin_name\": \"" + originName + "\", \"destination\": \"TLV\", "
+                + "\"destination_name\": \"" + DESTINATION + "\", \"departure_date\": \"" + departureDate + "\", "
+                + "\"departure_time\": \"" + departureTime + "\", \"arrival_date\": \"" + arrivalDate + "\", "
+                + "\"arrival_time\": \"" + arrivalTime + "\", \"carrier\": \"" + carrier + "\", \"stops\": 1, "
+                + "\"price\": \"" + price + "\"}";
+    }
+}
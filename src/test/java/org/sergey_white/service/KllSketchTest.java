@@ -0,0 +1,161 @@
+package org.sergey_white.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ошибка ранга скетча сверяется с точными квантилями отсортированного массива.
+ * Для k = 200 нормированная ошибка ранга около 1,65%; случайный сдвиг скетча детерминирован, поэтому тест стабилен.
+ */
+class KllSketchTest {
+    private static final double RANK_ERROR = 0.02;
+    private static final int SIZE = 1_000_000;
+
+    @Test
+    void smallStreamIsExact() {
+        Random random = new Random(19);
+        long[] values = random.longs(150, 0, 1000).toArray();
+        KllSketch sketch = new KllSketch();
+        for (long value : values) {
+            sketch.update(value);
+        }
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i <= 100; i++) {
+            double p = i / 100.0;
+            assertEquals(sorted[Math.max((int) Math.ceil(p * values.length), 1) - 1], sketch.quantile(p), "p " + p);
+        }
+    }
+
+    @Test
+    void rankErrorStaysWithinBound() {
+        Random random = new Random(23);
+        long[] uniform = random.longs(SIZE, 0, 1_000_000_000).toArray();
+        long[] ascending = new long[SIZE];
+        long[] descending = new long[SIZE];
+        long[] duplicates = random.longs(SIZE, 0, 50).toArray();
+        for (int i = 0; i < SIZE; i++) {
+            ascending[i] = i;
+            descending[i] = SIZE - i;
+        }
+        for (long[] values : new long[][]{uniform, ascending, descending, duplicates}) {
+            KllSketch sketch = new KllSketch();
+            for (long value : values) {
+                sketch.update(value);
+            }
+            assertEquals(SIZE, sketch.count());
+            // Память O(k): хранится малая доля значений потока
+            assertTrue(sketch.retainedItems() <= 4 * KllSketch.DEFAULT_K, "retained " + sketch.retainedItems());
+            assertRankError(values, sketch);
+        }
+    }
+
+    @Test
+    void skewedStreamsStayWithinBound() {
+        Random random = new Random(31);
+        long[] pareto = new long[SIZE];
+        long[] spike = new long[SIZE];
+        long[] runs = new long[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            // Тяжёлый правый хвост, как у цен: большинство значений малы, единицы - на порядки больше
+            pareto[i] = (long) (1000 / Math.pow(1 - random.nextDouble(), 1 / 1.2));
+            // Одно значение у 99% потока, остальное - разброс в обе стороны от него
+            spike[i] = random.nextInt(100) == 0 ? random.nextInt(2_000_000) : 1_000_000;
+            // Короткие возрастающие серии нечётной длины: уплотнения часто приходятся на нечётные уровни
+            runs[i] = i % 7 * 1000 + i / 7 % 13;
+        }
+        for (long[] values : new long[][]{pareto, spike, runs}) {
+            KllSketch sketch = new KllSketch();
+            for (long value : values) {
+                sketch.update(value);
+            }
+            assertRankError(values, sketch);
+        }
+
+        // Объединение множества скетчей из нечётного числа значений
+        KllSketch merged = new KllSketch();
+        for (int part = 0; part < SIZE / 999; part++) {
+            KllSketch sketch = new KllSketch();
+            for (int i = part * 999; i < (part + 1) * 999; i++) {
+                sketch.update(pareto[i]);
+            }
+            merged.merge(sketch);
+        }
+        assertRankError(Arrays.copyOf(pareto, SIZE / 999 * 999), merged);
+    }
+
+    @Test
+    void mergedSketchKeepsErrorBound() {
+        Random random = new Random(29);
+        long[] values = random.longs(SIZE, 0, 1_000_000_000).toArray();
+        int parts = 8;
+        KllSketch merged = new KllSketch();
+        for (int part = 0; part < parts; part++) {
+            KllSketch sketch = new KllSketch();
+            for (int i = part * SIZE / parts; i < (part + 1) * SIZE / parts; i++) {
+                sketch.update(values[i]);
+            }
+            merged.merge(sketch);
+        }
+        merged.merge(new KllSketch());
+
+        assertEquals(SIZE, merged.count());
+        assertTrue(merged.retainedItems() <= 4 * KllSketch.DEFAULT_K, "retained " + merged.retainedItems());
+        assertRankError(values, merged);
+    }
+
+    @Test
+    void mergeIntoEmptySketchCopiesValues() {
+        KllSketch source = new KllSketch();
+        for (long value = 1; value <= 100; value++) {
+            source.update(value);
+        }
+        KllSketch target = new KllSketch();
+        target.merge(source);
+        assertEquals(100, target.count());
+        assertEquals(50, target.quantile(0.5));
+        assertEquals(100, target.quantile(1));
+    }
+
+    @Test
+    void invalidUsageIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new KllSketch(7));
+        KllSketch sketch = new KllSketch();
+        assertThrows(IllegalStateException.class, () -> sketch.quantile(0.5));
+        sketch.update(1);
+        assertThrows(IllegalArgumentException.class, () -> sketch.quantile(1.01));
+        assertThrows(IllegalArgumentException.class, () -> sketch.quantile(-0.01));
+    }
+
+    // Ранг ответа - любой из рангов, которые занимает его значение в отсортированном массиве
+    private static void assertRankError(long[] values, KllSketch sketch) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (int i = 1; i < 100; i++) {
+            double p = i / 100.0;
+            long quantile = sketch.quantile(p);
+            long target = (long) Math.ceil(p * sorted.length);
+            long lowestRank = lowerBound(sorted, quantile) + 1;
+            long highestRank = lowerBound(sorted, quantile + 1);
+            long error = target < lowestRank ? lowestRank - target : Math.max(0, target - highestRank);
+            assertTrue(error <= RANK_ERROR * sorted.length, "p " + p + ": ошибка ранга " + error);
+        }
+    }
+
+    private static int lowerBound(long[] sorted, long value) {
+        int index = Arrays.binarySearch(sorted, value);
+        if (index < 0) {
+            return -index - 1;
+        }
+        while (index > 0 && sorted[index - 1] == value) {
+            index--;
+        }
+        return index;
+    }
+}
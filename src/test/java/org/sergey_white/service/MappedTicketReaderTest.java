@@ -0,0 +1,191 @@
+package org.sergey_white.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sergey_white.entity.CompactTicket;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Лексер отображённого файла сверяется с Jackson: при любом положении границ диапазонов
+ * параллельный разбор должен найти те же объекты-билеты в том же порядке, что и последовательный.
+ */
+class MappedTicketReaderTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final RouteFilter ANY_ROUTE = new RouteFilter("", "");
+    private static final String TRICKY_JSON = "{\"meta\": {\"note\": \"{[\\\"tickets\\\": []]}\"}, \"tickets\": [\n"
+            + "  {\"carrier\": \"a\\\"b\", \"price\": 0},\n"
+            + "  {\"carrier\": \"\\\\\", \"price\": 1, \"extra\": [\"]\", \"}\", {\"x\": \"{\"}]},\n"
+            + "  1, \"{\\\"carrier\\\": \\\"fake\\\"}\", null, [{\"carrier\": \"nested\", \"price\": -1}],\n"
+            + "  {\"carrier\": \"\\\\\\\"}\", \"price\": 2},\n"
+            + "  {\"carrier\": \"Аэрофлот \\u005c \\\" ]\", \"price\": 3, \"stops\": {\"a\": [[], {}]}},\n"
+            + "  {\"carrier\":\"\",\"price\":4}\n"
+            + "], \"tail\": {\"carrier\": \"after\", \"price\": 5}, \"more\": \"]\"}";
+
+    private static ForkJoinPool pool;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    void sequentialReadFindsTopLevelObjectsOnly() throws IOException {
+        Path file = write(TRICKY_JSON);
+        SymbolDictionary dictionary = new SymbolDictionary();
+        MappedTicketReader reader = new MappedTicketReader(MAPPER, pool, new PhaseMetrics());
+
+        List<String> tickets = describe(reader.read(new MappedTicketFile(file), arrayStart(TRICKY_JSON),
+                ANY_ROUTE, converter(dictionary), Collectors.toList()), dictionary);
+
+        assertEquals(expected(TRICKY_JSON), tickets);
+        assertEquals(List.of("a\"b#0", "\\#1", "\\\"}#2", "Аэрофлот \\ \" ]#3", "#4"), tickets);
+        assertEquals(5, reader.seen());
+    }
+
+    @Test
+    void parallelReadMatchesJacksonForEveryChunkSize() throws IOException {
+        assertChunkSizesAgree(TRICKY_JSON);
+    }
+
+    @Test
+    void parallelReadMatchesJacksonOnRandomEscapes() throws IOException {
+        Random random = new Random(42);
+        for (int round = 0; round < 5; round++) {
+            assertChunkSizesAgree(randomJson(random, 12));
+        }
+    }
+
+    @Test
+    void readObjectsReportsExactObjectBounds() throws IOException {
+        Path file = write(TRICKY_JSON);
+        MappedTicketFile mappedFile = new MappedTicketFile(file);
+        MappedTicketReader reader = new MappedTicketReader(MAPPER, pool, new PhaseMetrics());
+        byte[] bytes = TRICKY_JSON.getBytes(StandardCharsets.UTF_8);
+        List<JsonNode> nodes = new ArrayList<>();
+        List<String> sources = new ArrayList<>();
+
+        reader.readObjects(mappedFile, arrayStart(TRICKY_JSON), (start, length, node) -> {
+            nodes.add(node);
+            sources.add(new String(bytes, (int) start, length, StandardCharsets.UTF_8));
+        });
+
+        List<JsonNode> expected = new ArrayList<>();
+        MAPPER.readTree(TRICKY_JSON).path("tickets").forEach(node -> {
+            if (node.isObject()) {
+                expected.add(node);
+            }
+        });
+        assertEquals(expected, nodes);
+        for (int i = 0; i < sources.size(); i++) {
+            assertEquals(expected.get(i), MAPPER.readTree(sources.get(i)));
+        }
+    }
+
+    // Перебираются все размеры диапазона от одного байта до длины файла, так что граница
+    // оказывается внутри каждой строки, escape-последовательности и многобайтового символа
+    private void assertChunkSizesAgree(String json) throws IOException {
+        Path file = write(json);
+        MappedTicketFile mappedFile = new MappedTicketFile(file);
+        long arrayStart = arrayStart(json);
+        List<String> expected = expected(json);
+        for (long chunkSize = 1; chunkSize <= mappedFile.size(); chunkSize++) {
+            SymbolDictionary dictionary = new SymbolDictionary();
+            MappedTicketReader reader = new MappedTicketReader(MAPPER, pool, new PhaseMetrics(), chunkSize);
+            List<String> tickets = describe(reader.readParallel(mappedFile, arrayStart, ANY_ROUTE,
+                    converter(dictionary), Collectors.toList()), dictionary);
+            assertEquals(expected, tickets, "Размер диапазона " + chunkSize);
+            assertEquals(expected.size(), reader.seen(), "Размер диапазона " + chunkSize);
+        }
+    }
+
+    private static String randomJson(Random random, int tickets) throws IOException {
+        String alphabet = "\"\\{}[],: aж\n/";
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put("meta", randomString(random, alphabet));
+        ArrayNode array = root.putArray("tickets");
+        for (int i = 0; i < tickets; i++) {
+            if (random.nextInt(4) == 0) {
+                array.add(randomString(random, alphabet));
+                array.addArray().addObject().put("carrier", randomString(random, alphabet));
+            }
+            ObjectNode ticket = array.addObject();
+            ticket.put("carrier", randomString(random, alphabet));
+            ticket.put("price", i);
+            ticket.putArray("notes").add(randomString(random, alphabet)).addObject().put("x", randomString(random, alphabet));
+        }
+        root.put("tail", randomString(random, alphabet));
+        return MAPPER.writeValueAsString(root);
+    }
+
+    private static String randomString(Random random, String alphabet) {
+        StringBuilder value = new StringBuilder();
+        int length = random.nextInt(8);
+        for (int i = 0; i < length; i++) {
+            value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return value.toString();
+    }
+
+    private Path write(String json) throws IOException {
+        Path file = Files.createTempFile(directory, "tickets", ".json");
+        Files.writeString(file, json, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    // Позиция '[' массива tickets: первое вхождение ключа вне строк в тестовых файлах
+    private static long arrayStart(String json) {
+        String key = "\"tickets\":";
+        int index = json.indexOf(key);
+        while (json.charAt(index - 1) == '\\') {
+            index = json.indexOf(key, index + 1);
+        }
+        int bracket = json.indexOf('[', index);
+        return json.substring(0, bracket).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static List<String> expected(String json) throws IOException {
+        List<String> tickets = new ArrayList<>();
+        MAPPER.readTree(json).path("tickets").forEach(node -> {
+            if (node.isObject()) {
+                tickets.add(node.path("carrier").asText() + "#" + node.path("price").asLong());
+            }
+        });
+        return tickets;
+    }
+
+    private static MappedTicketReader.TicketConverter converter(SymbolDictionary dictionary) {
+        return (start, length, node) -> new CompactTicket(dictionary.carrierIdOf(node.path("carrier").asText()), 0, 0, 0, 0, 0, 0,
+                node.path("price").asLong(), (byte) 0, null);
+    }
+
+    private static List<String> describe(List<CompactTicket> tickets, SymbolDictionary dictionary) {
+        return tickets.stream()
+                .map(ticket -> dictionary.carrierOf(ticket.getCarrierId()) + "#" + ticket.getPriceKopecks())
+                .collect(Collectors.toList());
+    }
+}
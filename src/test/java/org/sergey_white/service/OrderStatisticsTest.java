@@ -0,0 +1,125 @@
+package org.sergey_white.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Introselect сверяется с полной сортировкой.
+ */
+class OrderStatisticsTest {
+
+    @Test
+    void everyRankOfSmallArraysMatchesSort() {
+        Random random = new Random(3);
+        for (int size = 1; size <= 100; size++) {
+            long[] values = random.longs(size, 0, size * 2L).toArray();
+            long[] sorted = sorted(values);
+            for (int k = 0; k < size; k++) {
+                assertEquals(sorted[k], OrderStatistics.select(values.clone(), size, k), "size " + size + ", k " + k);
+            }
+        }
+    }
+
+    @Test
+    void randomArraysWithDuplicatesMatchSort() {
+        Random random = new Random(5);
+        for (int round = 0; round < 200; round++) {
+            int size = 1 + random.nextInt(5000);
+            // Узкий диапазон значений даёт длинные серии равных элементов
+            long bound = random.nextBoolean() ? 1 + random.nextInt(10) : Long.MAX_VALUE;
+            long[] values = random.longs(size, 0, bound).toArray();
+            long[] sorted = sorted(values);
+            int k = random.nextInt(size);
+            assertEquals(sorted[k], OrderStatistics.select(values.clone(), size, k), "round " + round);
+        }
+    }
+
+    // Отсортированный, обратный, "орган" и пила, а также данные против медианы из трёх
+    // доводят выбор до переключения на медиану медиан
+    @Test
+    void adversarialPatternsMatchSort() {
+        for (Map.Entry<String, long[]> pattern : adversarialPatterns(10_000).entrySet()) {
+            long[] values = pattern.getValue();
+            long[] sorted = sorted(values);
+            for (int k : new int[]{0, 1, values.length / 4, values.length / 2, values.length - 2, values.length - 1}) {
+                assertEquals(sorted[k], OrderStatistics.select(values.clone(), values.length, k), pattern.getKey() + ", k " + k);
+            }
+        }
+    }
+
+    @Test
+    void selectOnlyConsidersPrefix() {
+        long[] values = {5, 1, 4, 2, 3, -100, -200};
+        assertEquals(1, OrderStatistics.select(values, 5, 0));
+        assertEquals(5, OrderStatistics.select(values, 5, 4));
+        assertEquals(-100, values[5]);
+    }
+
+    @Test
+    void percentileUsesNearestRank() {
+        Random random = new Random(9);
+        long[] values = random.longs(1001, 0, 1_000_000).toArray();
+        long[] sorted = sorted(values);
+        for (int i = 0; i <= 100; i++) {
+            double p = i / 100.0;
+            int rank = Math.max((int) Math.ceil(p * values.length), 1);
+            assertEquals(sorted[rank - 1], OrderStatistics.percentile(values.clone(), values.length, p), "p " + p);
+        }
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        long[] values = {1, 2, 3};
+        assertThrows(IllegalArgumentException.class, () -> OrderStatistics.select(values, 3, 3));
+        assertThrows(IllegalArgumentException.class, () -> OrderStatistics.select(values, 3, -1));
+        assertThrows(IllegalArgumentException.class, () -> OrderStatistics.select(values, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> OrderStatistics.percentile(values, 3, 1.5));
+        assertThrows(IllegalArgumentException.class, () -> OrderStatistics.percentile(values, 3, -0.1));
+    }
+
+    private static Map<String, long[]> adversarialPatterns(int size) {
+        Map<String, long[]> patterns = new LinkedHashMap<>();
+        long[] ascending = new long[size];
+        long[] descending = new long[size];
+        long[] equal = new long[size];
+        long[] organPipe = new long[size];
+        long[] sawtooth = new long[size];
+        long[] medianOfThreeKiller = new long[size];
+        for (int i = 0; i < size; i++) {
+            ascending[i] = i;
+            descending[i] = size - i;
+            equal[i] = 7;
+            organPipe[i] = Math.min(i, size - 1 - i);
+            sawtooth[i] = i % 100;
+        }
+        // Построение Musser для медианы из трёх
+        int half = size / 2;
+        for (int i = 1; i <= half; i++) {
+            if (i % 2 == 1) {
+                medianOfThreeKiller[i - 1] = i;
+                medianOfThreeKiller[i] = half + i;
+            }
+            medianOfThreeKiller[half + i - 1] = 2L * i;
+        }
+        patterns.put("ascending", ascending);
+        patterns.put("descending", descending);
+        patterns.put("equal", equal);
+        patterns.put("organ pipe", organPipe);
+        patterns.put("sawtooth", sawtooth);
+        patterns.put("median of three killer", medianOfThreeKiller);
+        return patterns;
+    }
+
+    private static long[] sorted(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,169 @@
+package org.sergey_white.service;
+
+import org.junit.jupiter.api.Test;
+import org.sergey_white.entity.AnalysisResult;
+import org.sergey_white.entity.CompactTicket;
+import org.sergey_white.entity.RouteStatistics;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ценовые показатели маршрута сверяются с прежним расчётом через BigDecimal (printPriceStatistics):
+ * строки отчёта должны совпадать побайтно, в том числе для цен с долями копейки.
+ */
+class RouteAggregatorTest {
+    private static final SymbolDictionary DICTIONARY = new SymbolDictionary();
+
+    @Test
+    void subKopeckPricesKeepExactStatistics() {
+        List<String> expected = List.of("101", "100.01", "1.00");
+        assertEquals(expected, render(aggregate(List.of("100.005", "100.005", "102.99"))));
+        assertEquals(expected, reference(List.of("100.005", "100.005", "102.99")));
+    }
+
+    @Test
+    void randomSeriesMatchBigDecimalReference() {
+        Random random = new Random(31);
+        for (int round = 0; round < 2000; round++) {
+            int size = 1 + random.nextInt(12);
+            boolean subKopeck = random.nextBoolean();
+            List<String> prices = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                prices.add(randomPrice(random, subKopeck));
+            }
+            assertEquals(reference(prices), render(aggregate(prices)), prices.toString());
+        }
+    }
+
+    @Test
+    void mergedPartsMatchSinglePass() {
+        Random random = new Random(37);
+        for (int round = 0; round < 2000; round++) {
+            int size = 2 + random.nextInt(12);
+            List<String> prices = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                prices.add(randomPrice(random, random.nextInt(4) == 0));
+            }
+            int split = 1 + random.nextInt(size - 1);
+            RouteAggregator left = aggregate(prices.subList(0, split));
+            left.merge(aggregate(prices.subList(split, size)));
+            assertEquals(reference(prices), render(left), prices.toString());
+        }
+    }
+
+    @Test
+    void approximateModeTakesMedianFromSketch() {
+        Random random = new Random(41);
+        for (int round = 0; round < 200; round++) {
+            int size = 1 + random.nextInt(5000);
+            List<String> prices = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                prices.add(randomPrice(random, false));
+            }
+            RouteStatistics exact = aggregate(prices, false).toStatistics("A", "B", DICTIONARY);
+            AnalysisResult approximate = aggregate(prices, true).toResult("A", "B", DICTIONARY);
+            RouteStatistics statistics = approximate.getStatistics();
+
+            assertEquals(exact.getTicketCount(), statistics.getTicketCount());
+            assertEquals(exact.getAveragePriceKopecks(), statistics.getAveragePriceKopecks());
+            assertEquals(Set.of(50, 90, 99), approximate.getApproximatePricePercentiles().keySet());
+            assertEquals(approximate.getApproximatePricePercentiles().get(50), statistics.getMedianPriceKopecks());
+            assertTrue(statistics.isMedianApproximate());
+            assertFalse(exact.isMedianApproximate());
+            // Ранг приближённой медианы отличается от size / 2 не больше чем на 2% билетов
+            long[] sorted = prices.stream().mapToLong(FixedPointPrices::parseKopecks).sorted().toArray();
+            int below = lowerBound(sorted, statistics.getMedianPriceKopecks());
+            int atOrBelow = lowerBound(sorted, statistics.getMedianPriceKopecks() + 1);
+            long tolerance = (long) Math.ceil(size * 0.02) + 1;
+            assertTrue(below <= size / 2 + tolerance && atOrBelow >= size / 2 - tolerance, prices.toString());
+        }
+    }
+
+    @Test
+    void approximateModeKeepsExactMedianOfPriceArray() {
+        Random random = new Random(43);
+        for (int round = 0; round < 200; round++) {
+            int size = 1 + random.nextInt(5000);
+            long[] prices = new long[size];
+            for (int i = 0; i < size; i++) {
+                prices[i] = random.nextInt(2_000_000);
+            }
+            RouteAggregator exact = new RouteAggregator(1, false);
+            exact.acceptPrices(prices.clone(), size);
+            RouteAggregator approximate = new RouteAggregator(1, true);
+            approximate.acceptPrices(prices.clone(), size);
+
+            // Массив цен передан целиком: медиана точная, скетч даёт только перцентили
+            AnalysisResult result = approximate.toResult("A", "B", DICTIONARY);
+            assertEquals(exact.toStatistics("A", "B", DICTIONARY), result.getStatistics());
+            assertEquals(Set.of(50, 90, 99), result.getApproximatePricePercentiles().keySet());
+        }
+    }
+
+    private static int lowerBound(long[] sorted, long value) {
+        int index = Arrays.binarySearch(sorted, value);
+        if (index < 0) {
+            return -index - 1;
+        }
+        while (index > 0 && sorted[index - 1] == value) {
+            index--;
+        }
+        return index;
+    }
+
+    private static String randomPrice(Random random, boolean subKopeck) {
+        BigDecimal price = BigDecimal.valueOf(random.nextInt(2_000_000), subKopeck ? 3 + random.nextInt(2) : 2);
+        // Узкий разброс цен даёт совпадающие копейки с разными долями
+        return random.nextInt(3) == 0 ? "100.00" + random.nextInt(10) : price.toPlainString();
+    }
+
+    private static RouteAggregator aggregate(List<String> prices) {
+        return aggregate(prices, false);
+    }
+
+    private static RouteAggregator aggregate(List<String> prices, boolean withPriceSketch) {
+        RouteAggregator aggregator = new RouteAggregator(1, withPriceSketch);
+        int carrier = DICTIONARY.carrierIdOf("SU");
+        for (String price : prices) {
+            aggregator.accept(new CompactTicket(carrier, 0, 0, 0, 0, 0, 60, FixedPointPrices.parseKopecks(price),
+                    (byte) 0, FixedPointPrices.subKopeckPrice(price)));
+        }
+        return aggregator;
+    }
+
+    private static List<String> render(RouteAggregator aggregator) {
+        RouteStatistics statistics = aggregator.toStatistics("A", "B", DICTIONARY);
+        return List.of(FixedPointPrices.format(statistics.getAveragePriceKopecks()),
+                FixedPointPrices.format(statistics.getMedianPriceKopecks(), statistics.getExactMedianPrice()),
+                FixedPointPrices.format(statistics.getPriceDifferenceKopecks(), statistics.getExactPriceDifference()));
+    }
+
+    // Прежний расчёт printPriceStatistics и formatBigDecimal
+    private static List<String> reference(List<String> texts) {
+        List<BigDecimal> prices = texts.stream().map(BigDecimal::new).sorted().toList();
+        BigDecimal sum = prices.stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal average = sum.divide(BigDecimal.valueOf(prices.size()), 0, RoundingMode.HALF_UP);
+        int size = prices.size();
+        BigDecimal median = size % 2 == 0
+                ? prices.get(size / 2 - 1).add(prices.get(size / 2)).divide(BigDecimal.valueOf(2), 0, RoundingMode.HALF_UP)
+                : prices.get(size / 2);
+        return List.of(format(average), format(median), format(average.subtract(median).abs()));
+    }
+
+    private static String format(BigDecimal value) {
+        if (value.scale() <= 0 || value.stripTrailingZeros().scale() <= 0) {
+            return value.setScale(0, RoundingMode.UNNECESSARY).toString();
+        }
+        return value.setScale(2, RoundingMode.HALF_UP).toString();
+    }
+}
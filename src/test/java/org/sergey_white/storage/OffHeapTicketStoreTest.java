@@ -0,0 +1,53 @@
+package org.sergey_white.storage;
+
+import org.junit.jupiter.api.Test;
+import org.sergey_white.entity.CompactTicket;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Точные цены в куче засчитываются в бюджет хранилища наравне с записями.
+ */
+class OffHeapTicketStoreTest {
+
+    @Test
+    void exactPricesCountAgainstBudget() {
+        long budget = 10 * (48L + OffHeapTicketStore.EXACT_PRICE_SIZE);
+        try (OffHeapTicketStore store = new OffHeapTicketStore(budget)) {
+            for (int i = 0; i < 10; i++) {
+                store.add(ticket(new BigDecimal("100.005")));
+            }
+            assertEquals(budget, store.usedBytes());
+            // Без точных цен в тот же бюджет поместилось бы больше записей, но он уже исчерпан
+            IllegalStateException e = assertThrows(IllegalStateException.class,
+                    () -> store.add(ticket(new BigDecimal("100.005"))));
+            assertTrue(e.getMessage().contains("точных цен в куче 10"), e.getMessage());
+            assertThrows(IllegalStateException.class, () -> store.add(ticket(null)));
+            assertEquals(new BigDecimal("100.005"), store.exactPrice(9));
+        }
+    }
+
+    @Test
+    void lastSlabGetsOnlyRemainingBudget() {
+        int recordsPerSlab = (4 << 20) / 48;
+        long budget = 48L * (recordsPerSlab + 10);
+        try (OffHeapTicketStore store = new OffHeapTicketStore(budget)) {
+            store.add(ticket(new BigDecimal("1.001")));
+            while (store.size() < recordsPerSlab + 7) {
+                store.add(ticket(null));
+            }
+            // Второй слаб урезан на место, занятое точной ценой
+            assertThrows(IllegalStateException.class, () -> store.add(ticket(null)));
+            assertEquals(48L * (recordsPerSlab + 7), store.allocatedBytes());
+            assertTrue(store.allocatedBytes() + OffHeapTicketStore.EXACT_PRICE_SIZE <= budget);
+        }
+    }
+
+    private static CompactTicket ticket(BigDecimal exactPrice) {
+        return new CompactTicket(0, 0, 0, 0, 0, 0, 60, 10_000, (byte) 0, exactPrice);
+    }
+}
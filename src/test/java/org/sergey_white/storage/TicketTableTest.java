@@ -0,0 +1,41 @@
+package org.sergey_white.storage;
+
+import org.junit.jupiter.api.Test;
+import org.sergey_white.entity.CompactTicket;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Идентификаторы маршрутов таблицы сверяются с картой по паре городов, в том числе после роста хеш-таблицы.
+ */
+class TicketTableTest {
+
+    @Test
+    void routeIdsAreDenseAndStable() {
+        Random random = new Random(43);
+        TicketTable table = new TicketTable();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int row = 0; row < 50_000; row++) {
+            int origin = random.nextInt(300);
+            int destination = random.nextInt(300);
+            table.add(new CompactTicket(0, 0, origin, 0, destination, 0, 60, 100, (byte) 0, null));
+            int route = expected.computeIfAbsent(((long) origin << 32) | destination, key -> expected.size());
+
+            assertEquals(route, table.routeIds()[row]);
+            assertEquals(origin, table.originNameId(row));
+            assertEquals(destination, table.destinationNameId(row));
+        }
+        assertEquals(expected.size(), table.routeCount());
+        expected.forEach((key, route) -> {
+            assertEquals(route, table.routeIdOf((int) (key >>> 32), key.intValue()));
+            assertEquals((int) (key >>> 32), table.routeOriginNameId(route));
+            assertEquals(key.intValue(), table.routeDestinationNameId(route));
+        });
+        assertEquals(-1, table.routeIdOf(300, 0));
+        assertEquals(-1, table.routeIdOf(-1, -1));
+    }
+}